@@ -0,0 +1,55 @@
+package com.sunmi.scanner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The built-in enhancers on one packed luma frame, the extra work a missed frame costs
+ * before its second decode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FrameEnhancerBenchmark {
+
+    @Param({"640x480", "1280x720"})
+    public String size;
+
+    @Param({"contrast", "binarize"})
+    public String mode;
+
+    private int width;
+    private int height;
+    private byte[] src;
+    private byte[] dst;
+    private FrameEnhancer enhancer;
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        width = Integer.parseInt(dimensions[0]);
+        height = Integer.parseInt(dimensions[1]);
+        src = new byte[width * height];
+        dst = new byte[width * height];
+        // a dim, low-contrast frame: luma between 40 and 104
+        Random random = new Random(42);
+        for (int i = 0; i < src.length; i++)
+            src[i] = (byte) (40 + random.nextInt(64));
+        enhancer = FrameEnhancers.factory(mode, 1, 31, 15).create();
+    }
+
+    @Benchmark
+    public byte[] enhance() {
+        enhancer.enhance(src, width, height, dst);
+        return dst;
+    }
+}
@@ -0,0 +1,88 @@
+package com.sunmi.scanner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Luma extraction from a direct Y plane, as done for every accepted frame, against the
+ * full copy plus per-pixel rotation the scan loop used to do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LumaExtractorBenchmark {
+    private static final int PADDING = 10;
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String size;
+
+    // extra bytes at the end of each row, as on devices with aligned strides
+    @Param({"0", "64"})
+    public int rowPadding;
+
+    private int width;
+    private int height;
+    private int rowStride;
+    private ByteBuffer plane;
+    private byte[] frame;
+    private byte[] rotated;
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        width = Integer.parseInt(dimensions[0]);
+        height = Integer.parseInt(dimensions[1]);
+        rowStride = width + rowPadding;
+
+        plane = ByteBuffer.allocateDirect(rowStride * (height - 1) + width);
+        for (int i = 0; i < plane.capacity(); i++)
+            plane.put(i, (byte) i);
+        frame = new byte[plane.capacity()];
+        rotated = new byte[plane.capacity()];
+    }
+
+    @Benchmark
+    public byte[] scanWindow() {
+        LumaExtractor.extract(plane, rowStride, 1, PADDING, PADDING,
+                width - 2 * PADDING, height - 2 * PADDING, frame);
+        return frame;
+    }
+
+    @Benchmark
+    public byte[] fullFrame() {
+        LumaExtractor.extract(plane, rowStride, 1, 0, 0, width, height, frame);
+        return frame;
+    }
+
+    @Benchmark
+    public byte[] interleavedScanWindow() {
+        // pixel stride 2 over the same buffer, exercising the per-pixel path
+        LumaExtractor.extract(plane, rowStride, 2, PADDING, PADDING,
+                (width - 2 * PADDING) / 2, height - 2 * PADDING, frame);
+        return frame;
+    }
+
+    /**
+     * The removed portrait path: copy the whole buffer, then rotate pixel by pixel.
+     */
+    @Benchmark
+    public byte[] legacyCopyAndRotate() {
+        plane.position(0);
+        plane.get(frame, 0, plane.remaining());
+        plane.position(0);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++)
+                rotated[x * height + height - y - 1] = frame[x + y * width];
+        }
+        return rotated;
+    }
+}
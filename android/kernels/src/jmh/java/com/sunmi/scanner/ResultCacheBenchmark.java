@@ -0,0 +1,53 @@
+package com.sunmi.scanner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Duplicate lookups for a code held in front of the camera (repeats) and for a stream
+ * of distinct codes that keeps the cache evicting (misses).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ResultCacheBenchmark {
+
+    @Param({"lru", "fifo"})
+    public String eviction;
+
+    private ResultCache cache;
+    private String[] codes;
+    private int next;
+    private long now;
+
+    @Setup
+    public void setUp() {
+        cache = new ResultCache();
+        cache.setWindowMillis(1000);
+        cache.setCapacity(64);
+        cache.setEviction(eviction);
+
+        codes = new String[1024];
+        for (int i = 0; i < codes.length; i++)
+            codes[i] = String.format("69012345%05d", i);
+    }
+
+    @Benchmark
+    public boolean repeat() {
+        return cache.isDuplicate("EAN-13", codes[0], now += 1000);
+    }
+
+    @Benchmark
+    public boolean miss() {
+        next = (next + 1) & (codes.length - 1);
+        return cache.isDuplicate("EAN-13", codes[next], now += 1000);
+    }
+}
@@ -0,0 +1,50 @@
+package com.sunmi.scanner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scene signature of a direct Y plane, as computed for every delivered frame while the
+ * frame rate governor is enabled.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SceneSignatureBenchmark {
+
+    @Param({"640x480", "1920x1080"})
+    public String size;
+
+    private int width;
+    private int height;
+    private ByteBuffer plane;
+    private final int[] cells = new int[SceneSignature.CELLS];
+    private final int[] reference = new int[SceneSignature.CELLS];
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        width = Integer.parseInt(dimensions[0]);
+        height = Integer.parseInt(dimensions[1]);
+        byte[] pixels = new byte[width * height];
+        new Random(42).nextBytes(pixels);
+        plane = ByteBuffer.allocateDirect(pixels.length);
+        plane.put(pixels).flip();
+    }
+
+    @Benchmark
+    public int computeAndCompare() {
+        SceneSignature.compute(plane, width, 1, width, height, cells);
+        return SceneSignature.difference(cells, reference);
+    }
+}
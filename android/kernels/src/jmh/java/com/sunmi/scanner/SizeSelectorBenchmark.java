@@ -0,0 +1,38 @@
+package com.sunmi.scanner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stream size selection over a YUV_420_888 size list typical of a handheld back camera.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SizeSelectorBenchmark {
+    private final int[] widths = {4160, 4000, 3840, 3264, 3264, 2592, 2560, 2048, 1920, 1920,
+            1600, 1440, 1280, 1280, 1024, 960, 800, 720, 640, 640, 352, 320, 176};
+    private final int[] heights = {3120, 3000, 2160, 2448, 1836, 1944, 1440, 1536, 1440, 1080,
+            1200, 1080, 960, 720, 768, 720, 600, 480, 480, 360, 288, 240, 144};
+
+    @Benchmark
+    public int chooseOptimalSize() {
+        return SizeSelector.chooseOptimalSize(widths, heights, 1080, 1920);
+    }
+
+    @Benchmark
+    public int chooseAnalysisSize() {
+        return SizeSelector.chooseAnalysisSize(widths, heights, 1280 * 720, 1920, 1080);
+    }
+
+    @Benchmark
+    public long[] matchingAreas() {
+        return SizeSelector.matchingAreas(widths, heights, 1920, 1080);
+    }
+}
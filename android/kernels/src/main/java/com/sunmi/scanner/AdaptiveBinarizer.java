@@ -0,0 +1,84 @@
+package com.sunmi.scanner;
+
+/**
+ * Local mean thresholding over an integral image (Bradley and Roth).
+ *
+ * A pixel turns black when it is more than thresholdPercent darker than the mean of
+ * the window around it, else white. Unlike a global threshold this survives uneven
+ * lighting, such as a label half in shadow on a warehouse shelf. The integral image
+ * makes every window sum four lookups, so the cost does not depend on the window
+ * size.
+ */
+public class AdaptiveBinarizer implements FrameEnhancer {
+    private final int window;
+    private final int thresholdPercent;
+    // (width + 1) x (height + 1) running sums, grown to the largest frame seen
+    private int[] integral = new int[0];
+    // window column bounds per x, clamped to the frame
+    private int[] lefts = new int[0];
+    private int[] rights = new int[0];
+
+    /**
+     * @param window           edge length of the averaging window in pixels, about the
+     *                         size of a few code modules, at most 255
+     * @param thresholdPercent how much darker than the local mean a pixel must be to
+     *                         count as black
+     */
+    public AdaptiveBinarizer(int window, int thresholdPercent) {
+        // keeps pixel * count * 100 within an int
+        this.window = Math.max(3, Math.min(255, window));
+        this.thresholdPercent = Math.max(0, Math.min(100, thresholdPercent));
+    }
+
+    @Override
+    public void enhance(byte[] src, int width, int height, byte[] dst) {
+        int stride = width + 1;
+        int required = stride * (height + 1);
+        if (integral.length < required)
+            integral = new int[required];
+        int[] integral = this.integral;
+
+        // sums may wrap around for very large frames; window sums are still exact
+        // because they are differences that fit in an int
+        for (int x = 0; x <= width; x++)
+            integral[x] = 0;
+        for (int y = 0; y < height; y++) {
+            int in = y * width;
+            int above = y * stride;
+            int out = above + stride;
+            integral[out] = 0;
+            int rowSum = 0;
+            for (int x = 0; x < width; x++) {
+                rowSum += src[in + x] & 0xff;
+                integral[out + x + 1] = integral[above + x + 1] + rowSum;
+            }
+        }
+
+        int half = window / 2;
+        if (lefts.length < width) {
+            lefts = new int[width];
+            rights = new int[width];
+        }
+        int[] lefts = this.lefts;
+        int[] rights = this.rights;
+        for (int x = 0; x < width; x++) {
+            lefts[x] = Math.max(0, x - half);
+            rights[x] = Math.min(width, x + half + 1);
+        }
+
+        int keep = 100 - thresholdPercent;
+        for (int y = 0; y < height; y++) {
+            int top = Math.max(0, y - half) * stride;
+            int bottom = Math.min(height, y + half + 1) * stride;
+            int rows100 = (bottom - top) / stride * 100;
+            int in = y * width;
+            for (int x = 0; x < width; x++) {
+                int left = lefts[x];
+                int right = rights[x];
+                int sum = integral[bottom + right] - integral[top + right] - integral[bottom + left] + integral[top + left];
+                // pixel < mean * keep / 100, without the division
+                dst[in + x] = (src[in + x] & 0xff) * (right - left) * rows100 <= sum * keep ? 0 : (byte) 255;
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.sunmi.scanner;
+
+/**
+ * Steps the analysis resolution along a ladder of supported sizes.
+ *
+ * Goes one step down when the smoothed decode latency no longer fits in the frame
+ * interval, and one step up after a run of failed decodes, as long as the larger size
+ * is still expected to decode within the frame interval.
+ */
+public class AnalysisResolutionGovernor {
+    // decodes to observe after a change before judging the new size
+    private static final int MIN_SAMPLES = 10;
+    private static final int FAILURES_BEFORE_STEP_UP = 30;
+
+    private final long[] ladder;
+    private int index;
+    private long averageLatencyNanos;
+    private int samples;
+    private int failures;
+
+    /**
+     * @param ladder       supported pixel counts, ascending
+     * @param pixelBudget  budget to start from
+     */
+    public AnalysisResolutionGovernor(long[] ladder, long pixelBudget) {
+        this.ladder = ladder;
+        index = 0;
+        for (int i = 0; i < ladder.length; i++) {
+            if (ladder[i] <= pixelBudget)
+                index = i;
+        }
+    }
+
+    public synchronized long getPixelBudget() {
+        return ladder.length > 0 ? ladder[index] : 0;
+    }
+
+    /**
+     * Records one decode and returns the pixel budget to switch to, or 0 to stay.
+     */
+    public synchronized long onDecode(long latencyNanos, boolean success, long frameIntervalNanos) {
+        averageLatencyNanos = samples == 0 ? latencyNanos : (averageLatencyNanos * 7 + latencyNanos) / 8;
+        samples++;
+        failures = success ? 0 : failures + 1;
+
+        if (samples < MIN_SAMPLES || frameIntervalNanos <= 0)
+            return 0;
+
+        if (averageLatencyNanos > frameIntervalNanos && index > 0)
+            return step(index - 1);
+
+        if (failures >= FAILURES_BEFORE_STEP_UP && index < ladder.length - 1) {
+            // decode time grows roughly with the pixel count
+            long predicted = averageLatencyNanos * ladder[index + 1] / ladder[index];
+            if (predicted <= frameIntervalNanos)
+                return step(index + 1);
+        }
+        return 0;
+    }
+
+    private long step(int newIndex) {
+        index = newIndex;
+        samples = 0;
+        failures = 0;
+        return ladder[index];
+    }
+}
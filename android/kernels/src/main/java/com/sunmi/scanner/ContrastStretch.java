@@ -0,0 +1,56 @@
+package com.sunmi.scanner;
+
+import java.util.Arrays;
+
+/**
+ * Linear contrast stretch through a 256-entry lookup table.
+ *
+ * The luma range between the darkest and brightest clipPercent of the pixels is
+ * spread over 0-255, which lifts dim or washed-out labels, e.g. faded thermal
+ * prints, to the contrast the binarizer of the decoder expects. The histogram is
+ * taken from every fourth pixel.
+ */
+public class ContrastStretch implements FrameEnhancer {
+    private static final int SAMPLE_STEP = 4;
+
+    private final int clipPercent;
+    private final int[] histogram = new int[256];
+    private final byte[] lut = new byte[256];
+
+    /**
+     * @param clipPercent share of the pixels at either end of the range that may be
+     *                    clipped to black or white, so a few specular highlights do
+     *                    not stop the stretch
+     */
+    public ContrastStretch(int clipPercent) {
+        this.clipPercent = Math.max(0, Math.min(49, clipPercent));
+    }
+
+    @Override
+    public void enhance(byte[] src, int width, int height, byte[] dst) {
+        int pixels = width * height;
+        Arrays.fill(histogram, 0);
+        for (int i = 0; i < pixels; i += SAMPLE_STEP)
+            histogram[src[i] & 0xff]++;
+
+        int samples = (pixels + SAMPLE_STEP - 1) / SAMPLE_STEP;
+        int clip = (int) ((long) samples * clipPercent / 100);
+        int low = 0;
+        for (int count = histogram[0]; count <= clip && low < 255; count += histogram[++low]);
+        int high = 255;
+        for (int count = histogram[255]; count <= clip && high > 0; count += histogram[--high]);
+        if (high <= low) {
+            // a flat frame has no contrast to stretch
+            System.arraycopy(src, 0, dst, 0, pixels);
+            return;
+        }
+
+        int range = high - low;
+        for (int v = 0; v < 256; v++) {
+            int stretched = (v - low) * 255 / range;
+            lut[v] = (byte) (stretched < 0 ? 0 : stretched > 255 ? 255 : stretched);
+        }
+        for (int i = 0; i < pixels; i++)
+            dst[i] = lut[src[i] & 0xff];
+    }
+}
@@ -0,0 +1,237 @@
+package com.sunmi.scanner;
+
+/**
+ * Pool of decode threads fed through a single-slot mailbox.
+ *
+ * A frame offered while another one is still pending replaces it, so a free worker
+ * always picks up the freshest image. Replaced and decoded frames go back to the pool.
+ */
+public class DecodeExecutor {
+
+    public interface Decoder {
+        /**
+         * Called on the decode thread of the given worker. The frame is returned to
+         * the pool afterwards. A decoder that does more than scan, such as publishing
+         * what it found, sets the frame's scanNanos to the time spent scanning.
+         *
+         * @return true if any symbol was found
+         */
+        boolean decode(FramePool.Frame frame, int worker);
+    }
+
+    public interface ErrorListener {
+        /**
+         * Called on the decode thread of the worker whose decoder threw. The worker
+         * goes on with the next frame.
+         */
+        void onDecodeError(RuntimeException e);
+    }
+
+    private final FramePool framePool;
+    private final Decoder decoder;
+    private final String name;
+    private final int workerCount;
+    private volatile ErrorListener errorListener;
+
+    private Thread[] threads;
+    private boolean shutdown;
+    private FramePool.Frame pending;
+    private int busy;
+    // latest decode start and end on any worker
+    private long lastDecodeStartNanos;
+    private long lastDecodeEndNanos;
+    // minimum time between decodes, 0 decodes every frame a worker is free for
+    private long intervalNanos;
+
+    private long offered;
+    private long overwritten;
+    private long decoded;
+    private long skipped;
+
+    public DecodeExecutor(String name, FramePool framePool, Decoder decoder, int workerCount) {
+        this.name = name;
+        this.framePool = framePool;
+        this.decoder = decoder;
+        this.workerCount = workerCount;
+    }
+
+    public void setErrorListener(ErrorListener listener) {
+        errorListener = listener;
+    }
+
+    public synchronized void start() {
+        if (threads != null || shutdown)
+            return;
+
+        final Thread[] started = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            final int worker = i;
+            started[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    loop(started, worker);
+                }
+            }, name + " " + i);
+        }
+        threads = started;
+        for (Thread thread : started)
+            thread.start();
+    }
+
+    public synchronized void stop() {
+        if (threads == null)
+            return;
+
+        for (Thread thread : threads)
+            thread.interrupt();
+        threads = null;
+        framePool.release(pending);
+        pending = null;
+        notifyAll();
+    }
+
+    /**
+     * Stops the workers for good; frames offered afterwards go straight back to the pool.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        stop();
+    }
+
+    /**
+     * Hands a frame to the next free worker, replacing any frame that is still waiting.
+     *
+     * @return true if a pending frame was replaced, i.e. dropped without being decoded
+     */
+    public synchronized boolean offer(FramePool.Frame frame) {
+        if (shutdown) {
+            framePool.release(frame);
+            return true;
+        }
+        if (isWithinInterval(System.nanoTime())) {
+            framePool.release(frame);
+            skipped++;
+            return false;
+        }
+        start();
+        offered++;
+        boolean replaced = pending != null;
+        if (replaced) {
+            framePool.release(pending);
+            overwritten++;
+        }
+        pending = frame;
+        notify();
+        return replaced;
+    }
+
+    /**
+     * Records a frame that was not offered because of the scan interval, or because
+     * the padding left no scan window.
+     */
+    public synchronized void skip() {
+        skipped++;
+    }
+
+    /**
+     * Minimum time between decodes, 0 turns it off. It counts from the latest decode
+     * start or end on any worker, whichever is later: with one worker that is the
+     * time from the end of one decode to the start of the next, with several workers
+     * their decodes may overlap but never start within the interval of each other.
+     * Frames arriving within the interval are skipped.
+     */
+    public synchronized void setInterval(long intervalMillis) {
+        intervalNanos = Math.max(0, intervalMillis) * 1000000L;
+    }
+
+    /**
+     * Whether a frame arriving now would be skipped because of the interval, so the
+     * caller can leave it out before copying it.
+     */
+    public synchronized boolean isWithinInterval() {
+        return isWithinInterval(System.nanoTime());
+    }
+
+    private boolean isWithinInterval(long now) {
+        long last = Math.max(lastDecodeStartNanos, lastDecodeEndNanos);
+        return intervalNanos > 0 && last != 0 && now - last < intervalNanos;
+    }
+
+    private void loop(Thread[] generation, int worker) {
+        while (true) {
+            FramePool.Frame frame;
+            synchronized (this) {
+                while (true) {
+                    while (pending == null && threads == generation) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            // stop() clears threads, which ends the loop below
+                        }
+                    }
+                    if (threads != generation)
+                        return;
+
+                    frame = pending;
+                    pending = null;
+                    long now = System.nanoTime();
+                    if (!isWithinInterval(now)) {
+                        lastDecodeStartNanos = now;
+                        busy++;
+                        break;
+                    }
+                    // offered before another decode started or ended
+                    framePool.release(frame);
+                    skipped++;
+                }
+            }
+
+            try {
+                decoder.decode(frame, worker);
+            } catch (RuntimeException e) {
+                // a failing frame must not take the decode thread down
+                ErrorListener listener = errorListener;
+                if (listener != null)
+                    listener.onDecodeError(e);
+            } finally {
+                framePool.release(frame);
+                synchronized (this) {
+                    busy--;
+                    lastDecodeEndNanos = System.nanoTime();
+                    decoded++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether no frame is waiting and no worker is decoding.
+     */
+    public synchronized boolean isIdle() {
+        return pending == null && busy == 0;
+    }
+
+    public FramePool getFramePool() {
+        return framePool;
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    public synchronized long getOfferedCount() {
+        return offered;
+    }
+
+    public synchronized long getOverwrittenCount() {
+        return overwritten;
+    }
+
+    public synchronized long getDecodedCount() {
+        return decoded;
+    }
+
+    public synchronized long getSkippedCount() {
+        return skipped;
+    }
+}
@@ -0,0 +1,20 @@
+package com.sunmi.scanner;
+
+/**
+ * Pre-decode transform of a packed luma frame, tried on frames the decoder could not
+ * read as they are.
+ *
+ * Each decode worker owns its own instance, so implementations keep their working
+ * buffers between frames and need not be thread-safe.
+ */
+public interface FrameEnhancer {
+
+    interface Factory {
+        FrameEnhancer create();
+    }
+
+    /**
+     * Writes the enhanced version of the width x height luma in src to dst.
+     */
+    void enhance(byte[] src, int width, int height, byte[] dst);
+}
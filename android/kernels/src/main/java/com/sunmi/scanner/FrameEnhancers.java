@@ -0,0 +1,41 @@
+package com.sunmi.scanner;
+
+/**
+ * The built-in enhancement modes.
+ */
+public final class FrameEnhancers {
+    public static final String MODE_OFF = "off";
+    public static final String MODE_CONTRAST = "contrast";
+    public static final String MODE_BINARIZE = "binarize";
+
+    private FrameEnhancers() {
+    }
+
+    /**
+     * Factory for the named mode, or null for "off" and unknown modes.
+     *
+     * @param clipPercent      see ContrastStretch
+     * @param window           see AdaptiveBinarizer
+     * @param thresholdPercent see AdaptiveBinarizer
+     */
+    public static FrameEnhancer.Factory factory(String mode, final int clipPercent, final int window,
+                                                final int thresholdPercent) {
+        if (MODE_CONTRAST.equals(mode)) {
+            return new FrameEnhancer.Factory() {
+                @Override
+                public FrameEnhancer create() {
+                    return new ContrastStretch(clipPercent);
+                }
+            };
+        }
+        if (MODE_BINARIZE.equals(mode)) {
+            return new FrameEnhancer.Factory() {
+                @Override
+                public FrameEnhancer create() {
+                    return new AdaptiveBinarizer(window, thresholdPercent);
+                }
+            };
+        }
+        return null;
+    }
+}
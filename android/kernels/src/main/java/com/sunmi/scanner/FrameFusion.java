@@ -0,0 +1,119 @@
+package com.sunmi.scanner;
+
+/**
+ * Averages consecutive frames that failed to decode into one denoised frame.
+ *
+ * Failed frames are summed into a reusable accumulator. Once it holds the configured
+ * number of frames the average is handed out for one more decode and a new run
+ * starts. Sensor noise shrinks with the square root of the number of frames, which
+ * can be enough for faded or dim codes that no single frame shows cleanly. A frame
+ * that differs from the running average by more than the allowed mean difference,
+ * e.g. because the camera or the label moved, starts a new run instead of leaving a
+ * ghost in the average. Any successful decode also ends the run.
+ */
+public class FrameFusion {
+    // frames compared on every SAMPLE_STEP-th pixel, prime so the samples do not line up in columns
+    private static final int SAMPLE_STEP = 61;
+
+    private int frames;
+    private int maxDifference = 8;
+
+    private int[] sums = new int[0];
+    private int width;
+    private int height;
+    private int count;
+
+    private long resets;
+
+    /**
+     * Number of failed frames averaged per fused frame, 0 turns fusion off.
+     */
+    public synchronized void setFrames(int frames) {
+        frames = frames <= 0 ? 0 : Math.max(2, Math.min(16, frames));
+        if (frames == this.frames)
+            return;
+        this.frames = frames;
+        count = 0;
+    }
+
+    /**
+     * Largest mean luma difference (0-255) between a frame and the running average
+     * that still counts as the same scene.
+     */
+    public synchronized void setMaxDifference(int maxDifference) {
+        this.maxDifference = maxDifference;
+    }
+
+    public synchronized boolean isEnabled() {
+        return frames > 0;
+    }
+
+    /**
+     * Adds a frame that failed to decode. When the run is complete, writes the average
+     * into fused, whose buffer must hold width x height bytes, and returns true.
+     */
+    public synchronized boolean add(FramePool.Frame frame, FramePool.Frame fused) {
+        if (frames == 0)
+            return false;
+
+        int pixels = frame.width * frame.height;
+        if (frame.width != width || frame.height != height) {
+            if (sums.length < pixels)
+                sums = new int[pixels];
+            width = frame.width;
+            height = frame.height;
+            count = 0;
+        }
+
+        byte[] data = frame.data;
+        if (count > 0 && difference(data, pixels) > maxDifference) {
+            resets++;
+            count = 0;
+        }
+        if (count == 0) {
+            for (int i = 0; i < pixels; i++)
+                sums[i] = data[i] & 0xff;
+        } else {
+            for (int i = 0; i < pixels; i++)
+                sums[i] += data[i] & 0xff;
+        }
+        if (++count < frames)
+            return false;
+
+        byte[] out = fused.data;
+        int half = count / 2;
+        for (int i = 0; i < pixels; i++)
+            out[i] = (byte) ((sums[i] + half) / count);
+        fused.width = frame.width;
+        fused.height = frame.height;
+        fused.sequence = frame.sequence;
+        fused.timestampNanos = frame.timestampNanos;
+        count = 0;
+        return true;
+    }
+
+    /**
+     * Ends the current run, e.g. because a frame decoded.
+     */
+    public synchronized void reset() {
+        count = 0;
+    }
+
+    /**
+     * Runs restarted because the scene changed.
+     */
+    public synchronized long getResetCount() {
+        return resets;
+    }
+
+    private int difference(byte[] data, int pixels) {
+        long total = 0;
+        int samples = 0;
+        for (int i = 0; i < pixels; i += SAMPLE_STEP) {
+            int mean = sums[i] / count;
+            total += Math.abs((data[i] & 0xff) - mean);
+            samples++;
+        }
+        return (int) (total / samples);
+    }
+}
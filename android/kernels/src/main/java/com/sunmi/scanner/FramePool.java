@@ -0,0 +1,104 @@
+package com.sunmi.scanner;
+
+/**
+ * Fixed ring of reusable luma frames.
+ *
+ * Buffers are sized once from the analysis stream dimensions, so the steady-state
+ * scan loop only hands the same frames around and allocates nothing. Decoders keep
+ * their own reusable image wrappers and point them at the frame buffer.
+ */
+public class FramePool {
+
+    public static class Frame {
+        public byte[] data;
+        public int width;
+        public int height;
+        // assigned by ScanPipeline in delivery order
+        public long sequence;
+        // source timestamp of the frame, in nanoseconds
+        public long timestampNanos;
+        // quality gate inputs of the frame, only filled while the gate is enabled
+        public final int[] signature = new int[SceneSignature.CELLS];
+        public int sharpness;
+        // time the decoder spent scanning the frame, left out of the decode stage are
+        // the steps after it such as publishing results; -1 until the decoder reports it
+        public long scanNanos = -1;
+        private boolean inUse;
+    }
+
+    private final Frame[] frames;
+    private int cursor;
+    private int capacity;
+
+    private long allocations;
+    private long acquired;
+    private long exhausted;
+
+    public FramePool(int size) {
+        frames = new Frame[size];
+        for (int i = 0; i < size; i++)
+            frames[i] = new Frame();
+    }
+
+    /**
+     * Sizes the buffers for frames of the given dimensions. Only reallocates when
+     * the required capacity grows, which happens on camera (re)configuration.
+     */
+    public synchronized void configure(int width, int height) {
+        int required = width * height;
+        if (required <= capacity)
+            return;
+
+        capacity = required;
+        for (Frame frame : frames) {
+            // frames currently decoding keep their old buffers until released
+            if (!frame.inUse)
+                allocate(frame);
+        }
+    }
+
+    /**
+     * Returns a free frame, or null when every frame is still in use.
+     */
+    public synchronized Frame acquire() {
+        for (int i = 0; i < frames.length; i++) {
+            Frame frame = frames[cursor];
+            cursor = (cursor + 1) % frames.length;
+            if (!frame.inUse) {
+                if (frame.data == null || frame.data.length < capacity)
+                    allocate(frame);
+                frame.inUse = true;
+                acquired++;
+                return frame;
+            }
+        }
+        exhausted++;
+        return null;
+    }
+
+    public synchronized void release(Frame frame) {
+        if (frame != null)
+            frame.inUse = false;
+    }
+
+    private void allocate(Frame frame) {
+        frame.data = new byte[capacity];
+        allocations++;
+    }
+
+    public int getSize() {
+        return frames.length;
+    }
+
+    public synchronized long getAllocationCount() {
+        return allocations;
+    }
+
+    public synchronized long getAcquiredCount() {
+        return acquired;
+    }
+
+    public synchronized long getExhaustedCount() {
+        return exhausted;
+    }
+}
@@ -0,0 +1,116 @@
+package com.sunmi.scanner;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pre-decode check that keeps hopeless frames away from the decoder.
+ *
+ * A frame is skipped when its sharpness is below the minimum, or when its scene
+ * signature is within the threshold of the last frame that failed to decode and it
+ * is not noticeably sharper. Both checks read a few thousand bytes of the plane, a
+ * small fraction of a decode.
+ */
+public class FrameQualityGate {
+    // sharpness sample grid, in points per axis
+    private static final int GRID_X = 32;
+    private static final int GRID_Y = 24;
+
+    private final int[] failedSignature = new int[SceneSignature.CELLS];
+    private boolean hasFailed;
+    private int failedSharpness;
+
+    private int minSharpness;
+    private int unchangedThreshold;
+
+    private int lastSharpness;
+    private long blurrySkipped;
+    private long unchangedSkipped;
+
+    /**
+     * Frames with a lower sharpness score are not decoded, 0 disables the check.
+     */
+    public synchronized void setMinSharpness(int minSharpness) {
+        this.minSharpness = minSharpness;
+    }
+
+    /**
+     * Frames whose scene signature differs from the last failed frame by less than
+     * this are not decoded, 0 disables the check.
+     */
+    public synchronized void setUnchangedThreshold(int unchangedThreshold) {
+        this.unchangedThreshold = unchangedThreshold;
+        hasFailed = false;
+    }
+
+    public synchronized boolean isEnabled() {
+        return minSharpness > 0 || unchangedThreshold > 0;
+    }
+
+    /**
+     * Mean squared gradient to the right and lower neighbours over a sample grid, a
+     * cheap focus measure: motion blur and defocus flatten edges and lower it.
+     *
+     * @param plane Y plane buffer, read with absolute offsets from its current position
+     */
+    public static int sharpness(ByteBuffer plane, int rowStride, int pixelStride, int width, int height) {
+        int base = plane.position();
+        long sum = 0;
+        for (int gy = 0; gy < GRID_Y; gy++) {
+            int y = (gy * 2 + 1) * (height - 1) / (GRID_Y * 2);
+            int row = base + y * rowStride;
+            for (int gx = 0; gx < GRID_X; gx++) {
+                int x = (gx * 2 + 1) * (width - 1) / (GRID_X * 2);
+                int offset = row + x * pixelStride;
+                int center = plane.get(offset) & 0xff;
+                int dx = (plane.get(offset + pixelStride) & 0xff) - center;
+                int dy = (plane.get(offset + rowStride) & 0xff) - center;
+                sum += dx * dx + dy * dy;
+            }
+        }
+        return (int) (sum / (GRID_X * GRID_Y));
+    }
+
+    /**
+     * Whether a frame with the given sharpness and scene signature is worth decoding.
+     * Skips are counted.
+     */
+    public synchronized boolean accept(int sharpness, int[] signature) {
+        lastSharpness = sharpness;
+        if (sharpness < minSharpness) {
+            blurrySkipped++;
+            return false;
+        }
+        // a sharper view of the same scene, e.g. after focusing, gets another try
+        if (hasFailed && SceneSignature.difference(signature, failedSignature) < unchangedThreshold
+                && sharpness <= failedSharpness + failedSharpness / 8) {
+            unchangedSkipped++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records the outcome of a decode of a frame that passed the gate.
+     */
+    public synchronized void onDecoded(boolean hit, int sharpness, int[] signature) {
+        if (hit) {
+            hasFailed = false;
+            return;
+        }
+        System.arraycopy(signature, 0, failedSignature, 0, failedSignature.length);
+        failedSharpness = sharpness;
+        hasFailed = unchangedThreshold > 0;
+    }
+
+    public synchronized int getLastSharpness() {
+        return lastSharpness;
+    }
+
+    public synchronized long getBlurrySkippedCount() {
+        return blurrySkipped;
+    }
+
+    public synchronized long getUnchangedSkippedCount() {
+        return unchangedSkipped;
+    }
+}
@@ -0,0 +1,98 @@
+package com.sunmi.scanner;
+
+/**
+ * Decides when the camera can drop to an idle frame rate.
+ *
+ * The scanner goes idle once neither a decode nor a scene change has been seen for
+ * the idle timeout, and wakes up on the first of either. Scene changes are measured
+ * against the signature of the last frame that counted as activity, so slow drifts
+ * add up until they wake the scanner too.
+ */
+public class FrameRateGovernor {
+
+    public interface Listener {
+        /**
+         * Called on the thread that reported the frame or decode causing the change.
+         */
+        void onIdleChanged(boolean idle);
+    }
+
+    private final int[] reference = new int[SceneSignature.CELLS];
+    private boolean hasReference;
+    private long lastActivityNanos;
+    private boolean idle;
+    private long idleTransitions;
+
+    private long idleTimeoutNanos;
+    private int sceneThreshold = 8;
+    private Listener listener;
+
+    /**
+     * Time without decodes or scene changes after which the scanner goes idle, 0 disables.
+     */
+    public synchronized void setIdleTimeoutMillis(long timeoutMillis) {
+        idleTimeoutNanos = timeoutMillis * 1000000L;
+        if (idleTimeoutNanos <= 0)
+            setIdle(false);
+    }
+
+    /**
+     * Mean luma difference per grid cell that counts as a scene change.
+     */
+    public synchronized void setSceneThreshold(int threshold) {
+        sceneThreshold = threshold;
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized boolean isEnabled() {
+        return idleTimeoutNanos > 0;
+    }
+
+    /**
+     * Checks the scene signature of a delivered frame for a scene change and for the
+     * idle timeout.
+     */
+    public synchronized void onFrame(int[] signature, long nowNanos) {
+        if (idleTimeoutNanos <= 0)
+            return;
+
+        if (!hasReference || SceneSignature.difference(signature, reference) > sceneThreshold) {
+            System.arraycopy(signature, 0, reference, 0, reference.length);
+            hasReference = true;
+            onActivity(nowNanos);
+        } else if (lastActivityNanos == 0) {
+            lastActivityNanos = nowNanos;
+        } else if (!idle && nowNanos - lastActivityNanos > idleTimeoutNanos) {
+            setIdle(true);
+        }
+    }
+
+    /**
+     * Records a successful decode or another sign that someone is scanning.
+     */
+    public synchronized void onActivity(long nowNanos) {
+        lastActivityNanos = nowNanos;
+        setIdle(false);
+    }
+
+    private void setIdle(boolean idle) {
+        if (this.idle == idle)
+            return;
+
+        this.idle = idle;
+        idleTransitions++;
+        if (listener != null)
+            listener.onIdleChanged(idle);
+    }
+
+    public synchronized boolean isIdle() {
+        return idle;
+    }
+
+    public synchronized long getIdleTransitions() {
+        return idleTransitions;
+    }
+}
@@ -0,0 +1,20 @@
+package com.sunmi.scanner;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives luma planes from a FrameSource.
+ */
+public interface FrameSink {
+    /**
+     * Called on the source's delivery thread. The plane is only valid during the call.
+     *
+     * @param plane          Y plane, read from its current position
+     * @param rowStride      bytes between the starts of two consecutive rows
+     * @param pixelStride    bytes between two consecutive pixels of a row
+     * @param width          frame width in pixels
+     * @param height         frame height in pixels
+     * @param timestampNanos capture timestamp of the frame
+     */
+    void onFrame(ByteBuffer plane, int rowStride, int pixelStride, int width, int height, long timestampNanos);
+}
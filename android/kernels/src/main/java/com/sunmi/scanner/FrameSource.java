@@ -0,0 +1,9 @@
+package com.sunmi.scanner;
+
+/**
+ * Something that delivers luma frames into the scan pipeline: the camera on a device,
+ * or recorded frames on a host.
+ */
+public interface FrameSource {
+    void setFrameSink(FrameSink sink);
+}
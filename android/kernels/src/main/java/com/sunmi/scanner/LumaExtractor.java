@@ -0,0 +1,48 @@
+package com.sunmi.scanner;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Copies the scan window out of a Y plane into a tightly packed Y800 buffer.
+ *
+ * Row and pixel strides of the source plane are honoured, so padded rows and
+ * interleaved layouts come out right, and only the rows and columns inside the
+ * window are touched.
+ */
+public final class LumaExtractor {
+
+    private LumaExtractor() {
+    }
+
+    /**
+     * @param plane       Y plane buffer, read with absolute offsets from its current position
+     * @param rowStride   bytes between the starts of two consecutive rows
+     * @param pixelStride bytes between two consecutive pixels of a row
+     * @param left        first column of the window
+     * @param top         first row of the window
+     * @param width       window width in pixels
+     * @param height      window height in pixels
+     * @param dst         target buffer, at least width * height bytes
+     */
+    public static void extract(ByteBuffer plane, int rowStride, int pixelStride,
+                               int left, int top, int width, int height, byte[] dst) {
+        int base = plane.position();
+        try {
+            if (pixelStride == 1) {
+                for (int y = 0; y < height; y++) {
+                    plane.position(base + (top + y) * rowStride + left);
+                    plane.get(dst, y * width, width);
+                }
+            } else {
+                int out = 0;
+                for (int y = 0; y < height; y++) {
+                    int in = base + (top + y) * rowStride + left * pixelStride;
+                    for (int x = 0; x < width; x++, in += pixelStride)
+                        dst[out++] = plane.get(in);
+                }
+            }
+        } finally {
+            plane.position(base);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.sunmi.scanner;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of recently emitted symbols, keyed by (symbolName, result).
+ *
+ * A symbol seen again within the window of its last emission counts as a duplicate.
+ * When full, the least recently used entry is evicted, or the oldest inserted one
+ * with FIFO eviction.
+ */
+public class ResultCache {
+    public static final String EVICTION_LRU = "lru";
+    public static final String EVICTION_FIFO = "fifo";
+
+    private LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int capacity = 64;
+    private long windowNanos;
+    private long suppressed;
+
+    public synchronized void setWindowMillis(long windowMillis) {
+        windowNanos = windowMillis * 1000000L;
+    }
+
+    public synchronized void setCapacity(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        trim();
+    }
+
+    public synchronized void setEviction(String eviction) {
+        boolean accessOrder = !EVICTION_FIFO.equals(eviction);
+        LinkedHashMap<String, Long> reordered = new LinkedHashMap<>(16, 0.75f, accessOrder);
+        reordered.putAll(entries);
+        entries = reordered;
+    }
+
+    public synchronized boolean isEnabled() {
+        return windowNanos > 0;
+    }
+
+    /**
+     * Returns true when the symbol was emitted within the window, otherwise records it
+     * as emitted now.
+     */
+    public synchronized boolean isDuplicate(String symbolName, String result, long nowNanos) {
+        if (windowNanos <= 0)
+            return false;
+
+        String key = symbolName + '\n' + result;
+        Long emitted = entries.get(key);
+        if (emitted != null && nowNanos - emitted < windowNanos) {
+            suppressed++;
+            return true;
+        }
+        entries.put(key, nowNanos);
+        trim();
+        return false;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized long getSuppressedCount() {
+        return suppressed;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (entries.size() > capacity && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
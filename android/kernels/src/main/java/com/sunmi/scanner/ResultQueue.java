@@ -0,0 +1,139 @@
+package com.sunmi.scanner;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Bounded queue of results waiting for the JS side, with acknowledged batches.
+ *
+ * Once a batch has been taken, the next one is only handed out after the consumer
+ * acknowledges it, so a busy JS thread slows the flow of results down instead of
+ * letting events pile up in the bridge. While waiting, at most capacity results are
+ * kept; when full, the oldest or the newest result is dropped, or with the merge
+ * policy a new result replaces a queued one with the same key. A capacity of 0 makes
+ * the queue unbounded and batches need no acknowledgement.
+ */
+public class ResultQueue<T> {
+    public static final String OVERFLOW_DROP_OLDEST = "dropOldest";
+    public static final String OVERFLOW_DROP_NEWEST = "dropNewest";
+    public static final String OVERFLOW_MERGE = "merge";
+
+    private static final class Entry<T> {
+        final String key;
+        T value;
+
+        Entry(String key, T value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private final ArrayDeque<Entry<T>> entries = new ArrayDeque<>();
+    private int capacity;
+    private String overflow = OVERFLOW_DROP_OLDEST;
+    private long batchId;
+    private boolean awaitingAck;
+    private long dropped;
+    private long merged;
+
+    public synchronized void setCapacity(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        if (this.capacity == 0)
+            awaitingAck = false;
+        while (this.capacity > 0 && entries.size() > this.capacity) {
+            entries.pollFirst();
+            dropped++;
+        }
+    }
+
+    public synchronized void setOverflow(String overflow) {
+        this.overflow = overflow != null ? overflow : OVERFLOW_DROP_OLDEST;
+    }
+
+    /**
+     * Queues a result. The key identifies results the merge policy may combine.
+     *
+     * @return false if the result was dropped
+     */
+    public synchronized boolean offer(String key, T value) {
+        if (capacity > 0 && entries.size() >= capacity) {
+            if (OVERFLOW_DROP_NEWEST.equals(overflow)) {
+                dropped++;
+                return false;
+            }
+            if (OVERFLOW_MERGE.equals(overflow)) {
+                for (Entry<T> entry : entries) {
+                    if (entry.key.equals(key)) {
+                        // the queued result keeps its place but carries the newer frame
+                        entry.value = value;
+                        merged++;
+                        return true;
+                    }
+                }
+            }
+            entries.pollFirst();
+            dropped++;
+        }
+        entries.addLast(new Entry<>(key, value));
+        return true;
+    }
+
+    /**
+     * Removes and returns all queued results as the next batch, or null when the queue
+     * is empty or the previous batch has not been acknowledged yet.
+     */
+    public synchronized List<T> takeBatch() {
+        if (awaitingAck || entries.isEmpty())
+            return null;
+
+        List<T> batch = new ArrayList<>(entries.size());
+        for (Iterator<Entry<T>> it = entries.iterator(); it.hasNext(); ) {
+            batch.add(it.next().value);
+            it.remove();
+        }
+        batchId++;
+        awaitingAck = capacity > 0;
+        return batch;
+    }
+
+    /**
+     * Id of the batch last returned by takeBatch.
+     */
+    public synchronized long getBatchId() {
+        return batchId;
+    }
+
+    /**
+     * Marks the batch as received. Stale or repeated ids are ignored.
+     *
+     * @return true if results are waiting to be taken
+     */
+    public synchronized boolean acknowledge(long batchId) {
+        if (batchId == this.batchId)
+            awaitingAck = false;
+        return !awaitingAck && !entries.isEmpty();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        awaitingAck = false;
+    }
+
+    public synchronized boolean isAwaitingAck() {
+        return awaitingAck;
+    }
+
+    public synchronized int getDepth() {
+        return entries.size();
+    }
+
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    public synchronized long getMergedCount() {
+        return merged;
+    }
+}
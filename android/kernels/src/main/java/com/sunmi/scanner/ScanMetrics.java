@@ -0,0 +1,167 @@
+package com.sunmi.scanner;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-view scan pipeline counters and per-stage latency histograms.
+ *
+ * Everything is lock-free and allocation-free on the recording side, so it can stay
+ * enabled in production builds.
+ */
+public class ScanMetrics {
+    // sensor exposure to onImageAvailable
+    public static final int STAGE_DELIVERY = 0;
+    // luma extraction into the pooled frame
+    public static final int STAGE_COPY = 1;
+    // ImageScanner.scanImage
+    public static final int STAGE_DECODE = 2;
+    // building the result maps
+    public static final int STAGE_MARSHAL = 3;
+    // handing the event to the bridge
+    public static final int STAGE_EMIT = 4;
+    // scene signature and sharpness checks before the copy
+    public static final int STAGE_QUALITY = 5;
+    // enhancing a frame the decoder could not read as it was
+    public static final int STAGE_ENHANCE = 6;
+    // adding a failed frame to the fusion accumulator
+    public static final int STAGE_FUSION = 7;
+
+    static final String[] STAGE_NAMES = {"delivery", "copy", "decode", "marshal", "emit", "quality", "enhance", "fusion"};
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[STAGE_NAMES.length];
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong captureFailures = new AtomicLong();
+    private final AtomicLong decodeAttempts = new AtomicLong();
+    private final AtomicLong decodeHits = new AtomicLong();
+    private final AtomicLong decodeErrors = new AtomicLong();
+    private final AtomicLong enhancedAttempts = new AtomicLong();
+    private final AtomicLong enhancedHits = new AtomicLong();
+    private final AtomicLong fusedAttempts = new AtomicLong();
+    private final AtomicLong fusedHits = new AtomicLong();
+
+    public ScanMetrics() {
+        for (int i = 0; i < stages.length; i++)
+            stages[i] = new LatencyHistogram();
+    }
+
+    public void record(int stage, long nanos) {
+        stages[stage].record(nanos);
+    }
+
+    public void frameReceived() {
+        framesReceived.incrementAndGet();
+    }
+
+    public void frameDropped() {
+        framesDropped.incrementAndGet();
+    }
+
+    public void captureFailed() {
+        captureFailures.incrementAndGet();
+    }
+
+    public void decoded(boolean hit) {
+        decodeAttempts.incrementAndGet();
+        if (hit)
+            decodeHits.incrementAndGet();
+    }
+
+    /**
+     * Records a decoder that threw on a frame; the frame is not counted by decoded().
+     */
+    public void decodeFailed() {
+        decodeErrors.incrementAndGet();
+    }
+
+    /**
+     * Records a second decode of a frame after enhancement. A hit here is also counted
+     * by decoded(), as the frame did decode in the end.
+     */
+    public void enhanced(boolean hit) {
+        enhancedAttempts.incrementAndGet();
+        if (hit)
+            enhancedHits.incrementAndGet();
+    }
+
+    /**
+     * Records a decode of a fused frame. A hit here is also counted by decoded().
+     */
+    public void fused(boolean hit) {
+        fusedAttempts.incrementAndGet();
+        if (hit)
+            fusedHits.incrementAndGet();
+    }
+
+    public LatencyHistogram getStage(int stage) {
+        return stages[stage];
+    }
+
+    public long getFramesReceived() {
+        return framesReceived.get();
+    }
+
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    public long getCaptureFailures() {
+        return captureFailures.get();
+    }
+
+    public long getDecodeAttempts() {
+        return decodeAttempts.get();
+    }
+
+    public long getDecodeHits() {
+        return decodeHits.get();
+    }
+
+    public long getDecodeErrors() {
+        return decodeErrors.get();
+    }
+
+    public double getHitRate() {
+        long attempts = decodeAttempts.get();
+        return attempts == 0 ? 0 : (double) decodeHits.get() / attempts;
+    }
+
+    public long getEnhancedAttempts() {
+        return enhancedAttempts.get();
+    }
+
+    public long getEnhancedHits() {
+        return enhancedHits.get();
+    }
+
+    public long getFusedAttempts() {
+        return fusedAttempts.get();
+    }
+
+    public long getFusedHits() {
+        return fusedHits.get();
+    }
+
+    /**
+     * Share of decode attempts that would have hit without the enhancement stage.
+     */
+    public double getHitRateWithoutEnhancement() {
+        long attempts = decodeAttempts.get();
+        return attempts == 0 ? 0 : (double) (decodeHits.get() - enhancedHits.get()) / attempts;
+    }
+
+    public void reset() {
+        for (LatencyHistogram stage : stages)
+            stage.reset();
+        framesReceived.set(0);
+        framesDropped.set(0);
+        captureFailures.set(0);
+        decodeAttempts.set(0);
+        decodeHits.set(0);
+        decodeErrors.set(0);
+        enhancedAttempts.set(0);
+        enhancedHits.set(0);
+        fusedAttempts.set(0);
+        fusedHits.set(0);
+    }
+}
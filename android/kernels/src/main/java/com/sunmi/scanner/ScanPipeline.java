@@ -0,0 +1,397 @@
+package com.sunmi.scanner;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Frame path from a FrameSource to the decoders: scan interval gating, copying the
+ * scan window into a pooled frame and handing it to the decode workers, with
+ * metrics for each step.
+ *
+ * Decoding itself is pluggable, so the same pipeline runs against the Sunmi decoder
+ * on a device and against a stand-in on hosts without the native library.
+ */
+public class ScanPipeline implements FrameSink {
+
+    public interface DecoderFactory {
+        /**
+         * Creates the decoder for a new set of workers. Each worker index is only ever
+         * used from one thread.
+         */
+        DecodeExecutor.Decoder create(int workers);
+    }
+
+    public interface ResolutionListener {
+        /**
+         * Called on a decode thread when the governor picks a new analysis pixel budget.
+         */
+        void onPixelBudgetChanged(long pixelBudget);
+    }
+
+    private final String name;
+    private final DecoderFactory decoderFactory;
+    private final ScanMetrics metrics = new ScanMetrics();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private volatile DecodeExecutor decodeExecutor;
+    private volatile long scanInterval;
+    private volatile int padding;
+    private int analysisWidth;
+    private int analysisHeight;
+
+    // smoothed source frame interval, from frame timestamps
+    private volatile long frameIntervalNanos;
+    private long lastFrameTimestamp;
+
+    private final FrameRateGovernor frameRateGovernor = new FrameRateGovernor();
+    private final FrameQualityGate qualityGate = new FrameQualityGate();
+    // fusion settings, applied to the accumulator of every worker
+    private volatile int fusionFrames;
+    private volatile int fusionMaxDifference = 8;
+    private final AtomicLong fusionResets = new AtomicLong();
+    // scene signature of the frame being delivered
+    private final int[] signature = new int[SceneSignature.CELLS];
+    // while idle only every idleStride-th frame is decoded
+    private volatile int idleStride = 1;
+    private long idleFrames;
+    private volatile long idleSkipped;
+
+    private volatile AnalysisResolutionGovernor resolutionGovernor;
+    private volatile ResolutionListener resolutionListener;
+    private volatile DecodeExecutor.ErrorListener errorListener;
+    // counts decoder errors and passes them on, set on every executor
+    private final DecodeExecutor.ErrorListener decodeErrors = new DecodeExecutor.ErrorListener() {
+        @Override
+        public void onDecodeError(RuntimeException e) {
+            metrics.decodeFailed();
+            DecodeExecutor.ErrorListener listener = errorListener;
+            if (listener != null)
+                listener.onDecodeError(e);
+        }
+    };
+    // second pass over frames that did not decode, null when off
+    private volatile FrameEnhancer.Factory enhancerFactory;
+
+    public ScanPipeline(String name, DecoderFactory decoderFactory) {
+        this.name = name;
+        this.decoderFactory = decoderFactory;
+        setWorkers(1);
+    }
+
+    /**
+     * Sets the number of decode threads, capped at the number of available cores.
+     */
+    public synchronized void setWorkers(int workers) {
+        workers = Math.max(1, Math.min(workers, Runtime.getRuntime().availableProcessors()));
+        if (decodeExecutor != null) {
+            if (decodeExecutor.getWorkerCount() == workers)
+                return;
+            decodeExecutor.shutdown();
+        }
+
+        // one frame being filled, one waiting in the mailbox and one per worker being decoded
+        FramePool pool = new FramePool(workers + 2);
+        if (analysisWidth > 0)
+            pool.configure(analysisWidth, analysisHeight);
+        decodeExecutor = new DecodeExecutor(name + " decode", pool,
+                new TimedDecoder(decoderFactory.create(workers), workers), workers);
+        decodeExecutor.setInterval(scanInterval);
+        decodeExecutor.setErrorListener(decodeErrors);
+    }
+
+    /**
+     * Sizes the frame buffers for the analysis stream.
+     */
+    public synchronized void configure(int width, int height) {
+        analysisWidth = width;
+        analysisHeight = height;
+        decodeExecutor.getFramePool().configure(width, height);
+    }
+
+    public synchronized void setScanInterval(long scanInterval) {
+        this.scanInterval = scanInterval;
+        decodeExecutor.setInterval(scanInterval);
+    }
+
+    /**
+     * Border, in pixels, left out of the scan window on every side.
+     */
+    public void setPadding(int padding) {
+        this.padding = padding;
+    }
+
+    /**
+     * Receives exceptions thrown by the decoder, which are also counted in the metrics.
+     */
+    public void setErrorListener(DecodeExecutor.ErrorListener listener) {
+        errorListener = listener;
+    }
+
+    public void setResolutionGovernor(AnalysisResolutionGovernor governor, ResolutionListener listener) {
+        resolutionListener = listener;
+        resolutionGovernor = governor;
+    }
+
+    /**
+     * Decodes only every given frame while the frame rate governor reports idle.
+     */
+    public void setIdleStride(int idleStride) {
+        this.idleStride = Math.max(1, idleStride);
+    }
+
+    /**
+     * Frames that do not decode are enhanced by an enhancer from this factory and
+     * decoded once more. null turns the second pass off.
+     */
+    public void setEnhancer(FrameEnhancer.Factory factory) {
+        enhancerFactory = factory;
+    }
+
+    public AnalysisResolutionGovernor getResolutionGovernor() {
+        return resolutionGovernor;
+    }
+
+    public void stop() {
+        decodeExecutor.stop();
+    }
+
+    @Override
+    public void onFrame(ByteBuffer plane, int rowStride, int pixelStride, int width, int height, long timestampNanos) {
+        metrics.frameReceived();
+        if (lastFrameTimestamp != 0 && timestampNanos > lastFrameTimestamp) {
+            long interval = timestampNanos - lastFrameTimestamp;
+            frameIntervalNanos = frameIntervalNanos == 0 ? interval : (frameIntervalNanos * 7 + interval) / 8;
+        }
+        lastFrameTimestamp = timestampNanos;
+
+        // only the scan window inside the padding border is copied out of the Y plane
+        int padding = this.padding;
+        int windowWidth = width - 2 * padding;
+        int windowHeight = height - 2 * padding;
+        DecodeExecutor decodeExecutor = this.decodeExecutor;
+        if (windowWidth <= 0 || windowHeight <= 0) {
+            // the padding leaves nothing to scan
+            decodeExecutor.skip();
+            return;
+        }
+
+        boolean governed = frameRateGovernor.isEnabled();
+        boolean gated = qualityGate.isEnabled();
+        long start = System.nanoTime();
+        if (governed || gated)
+            SceneSignature.compute(plane, rowStride, pixelStride, width, height, signature);
+        if (governed) {
+            frameRateGovernor.onFrame(signature, start);
+            if (frameRateGovernor.isIdle() && idleFrames++ % idleStride != 0) {
+                idleSkipped++;
+                return;
+            }
+        }
+
+        if (decodeExecutor.isWithinInterval()) {
+            decodeExecutor.skip();
+            return;
+        }
+
+        int sharpness = 0;
+        if (gated) {
+            sharpness = FrameQualityGate.sharpness(plane, rowStride, pixelStride, width, height);
+            boolean accepted = qualityGate.accept(sharpness, signature);
+            metrics.record(ScanMetrics.STAGE_QUALITY, System.nanoTime() - start);
+            if (!accepted)
+                return;
+        }
+
+        FramePool.Frame frame = decodeExecutor.getFramePool().acquire();
+        if (frame == null) {
+            metrics.frameDropped();
+            return;
+        }
+
+        start = System.nanoTime();
+        LumaExtractor.extract(plane, rowStride, pixelStride, padding, padding, windowWidth, windowHeight, frame.data);
+        metrics.record(ScanMetrics.STAGE_COPY, System.nanoTime() - start);
+
+        frame.width = windowWidth;
+        frame.height = windowHeight;
+        frame.timestampNanos = timestampNanos;
+        frame.sequence = sequence.incrementAndGet();
+        if (gated) {
+            System.arraycopy(signature, 0, frame.signature, 0, signature.length);
+            frame.sharpness = sharpness;
+        }
+        if (decodeExecutor.offer(frame))
+            metrics.frameDropped();
+    }
+
+    private class TimedDecoder implements DecodeExecutor.Decoder {
+        private final DecodeExecutor.Decoder decoder;
+        private final int workers;
+        // per worker: the enhancer, the factory it came from and its output frame
+        private final FrameEnhancer[] enhancers;
+        private final FrameEnhancer.Factory[] enhancerFactories;
+        private final FramePool.Frame[] enhancedFrames;
+        private final FramePool.Frame[] fusedFrames;
+        // each worker averages only the frames it decodes itself, which arrive in order
+        private final FrameFusion[] fusions;
+        // scanner time of the passes over the current frame, per worker
+        private final long[] scanNanos;
+
+        TimedDecoder(DecodeExecutor.Decoder decoder, int workers) {
+            this.decoder = decoder;
+            this.workers = workers;
+            enhancers = new FrameEnhancer[workers];
+            enhancerFactories = new FrameEnhancer.Factory[workers];
+            enhancedFrames = new FramePool.Frame[workers];
+            fusedFrames = new FramePool.Frame[workers];
+            fusions = new FrameFusion[workers];
+            scanNanos = new long[workers];
+            for (int i = 0; i < workers; i++) {
+                enhancedFrames[i] = new FramePool.Frame();
+                fusedFrames[i] = new FramePool.Frame();
+                fusions[i] = new FrameFusion();
+            }
+        }
+
+        @Override
+        public boolean decode(FramePool.Frame frame, int worker) {
+            scanNanos[worker] = 0;
+            boolean hit = scan(frame, worker);
+            // frames that decode as they are never pay for the enhancement
+            FrameEnhancer.Factory factory = enhancerFactory;
+            if (!hit && factory != null)
+                hit = decodeEnhanced(frame, worker, factory);
+            if (!hit && fusionFrames > 0)
+                hit = decodeFused(frame, worker);
+            else if (hit)
+                fusions[worker].reset();
+            // only the scanner itself, the enhance and fusion steps and publishing
+            // the results are stages of their own
+            long latency = scanNanos[worker];
+            metrics.record(ScanMetrics.STAGE_DECODE, latency);
+            metrics.decoded(hit);
+            if (hit)
+                frameRateGovernor.onActivity(System.nanoTime());
+            if (qualityGate.isEnabled())
+                qualityGate.onDecoded(hit, frame.sharpness, frame.signature);
+            adaptResolution(latency, hit, workers);
+            return hit;
+        }
+
+        /**
+         * One decoder pass, adding its scan time to the worker's total. Decoders that
+         * do not report it are timed as a whole.
+         */
+        private boolean scan(FramePool.Frame frame, int worker) {
+            frame.scanNanos = -1;
+            long start = System.nanoTime();
+            boolean hit = decoder.decode(frame, worker);
+            scanNanos[worker] += frame.scanNanos >= 0 ? frame.scanNanos : System.nanoTime() - start;
+            return hit;
+        }
+
+        private boolean decodeEnhanced(FramePool.Frame frame, int worker, FrameEnhancer.Factory factory) {
+            if (enhancerFactories[worker] != factory) {
+                enhancers[worker] = factory.create();
+                enhancerFactories[worker] = factory;
+            }
+            FramePool.Frame enhanced = enhancedFrames[worker];
+            int pixels = frame.width * frame.height;
+            if (enhanced.data == null || enhanced.data.length < pixels)
+                enhanced.data = new byte[pixels];
+            enhanced.width = frame.width;
+            enhanced.height = frame.height;
+            enhanced.sequence = frame.sequence;
+            enhanced.timestampNanos = frame.timestampNanos;
+
+            long start = System.nanoTime();
+            enhancers[worker].enhance(frame.data, frame.width, frame.height, enhanced.data);
+            metrics.record(ScanMetrics.STAGE_ENHANCE, System.nanoTime() - start);
+            boolean hit = scan(enhanced, worker);
+            metrics.enhanced(hit);
+            return hit;
+        }
+
+        private boolean decodeFused(FramePool.Frame frame, int worker) {
+            FramePool.Frame fused = fusedFrames[worker];
+            int pixels = frame.width * frame.height;
+            if (fused.data == null || fused.data.length < pixels)
+                fused.data = new byte[pixels];
+
+            FrameFusion fusion = fusions[worker];
+            fusion.setFrames(fusionFrames);
+            fusion.setMaxDifference(fusionMaxDifference);
+            long resets = fusion.getResetCount();
+            long start = System.nanoTime();
+            boolean ready = fusion.add(frame, fused);
+            metrics.record(ScanMetrics.STAGE_FUSION, System.nanoTime() - start);
+            fusionResets.addAndGet(fusion.getResetCount() - resets);
+            if (!ready)
+                return false;
+            boolean hit = scan(fused, worker);
+            metrics.fused(hit);
+            return hit;
+        }
+    }
+
+    private void adaptResolution(long latencyNanos, boolean success, int workers) {
+        AnalysisResolutionGovernor governor = resolutionGovernor;
+        if (governor == null)
+            return;
+
+        // with several workers each decode may take that many frame intervals
+        long budget = governor.onDecode(latencyNanos, success, frameIntervalNanos * workers);
+        ResolutionListener listener = resolutionListener;
+        if (budget > 0 && listener != null)
+            listener.onPixelBudgetChanged(budget);
+    }
+
+    public ScanMetrics getMetrics() {
+        return metrics;
+    }
+
+    public FrameQualityGate getQualityGate() {
+        return qualityGate;
+    }
+
+    /**
+     * Number of failed frames averaged into one fused frame, 0 turns fusion off. Every
+     * decode worker fuses the frames it decodes on its own.
+     */
+    public void setFusionFrames(int frames) {
+        fusionFrames = Math.max(0, frames);
+    }
+
+    /**
+     * Mean luma difference from the running average above which a frame starts a new run.
+     */
+    public void setFusionMaxDifference(int maxDifference) {
+        fusionMaxDifference = maxDifference;
+    }
+
+    /**
+     * Fusion runs restarted by scene changes, over all workers.
+     */
+    public long getFusionResetCount() {
+        return fusionResets.get();
+    }
+
+    public FrameRateGovernor getFrameRateGovernor() {
+        return frameRateGovernor;
+    }
+
+    /**
+     * Frames left out by the idle stride.
+     */
+    public long getIdleSkippedCount() {
+        return idleSkipped;
+    }
+
+    public DecodeExecutor getDecodeExecutor() {
+        return decodeExecutor;
+    }
+
+    public long getFrameIntervalNanos() {
+        return frameIntervalNanos;
+    }
+}
@@ -0,0 +1,79 @@
+package com.sunmi.scanner;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Monotonic timestamps of the milestones between mounting a scanner view and its
+ * first result, to tell whether a slow first scan is spent opening the camera,
+ * configuring the session, converging exposure and focus, or decoding.
+ *
+ * Only the first time each milestone is reached is kept. Marking is lock-free and,
+ * once a milestone is set, a single volatile read, so it can sit on the frame path.
+ */
+public class ScanTimeline {
+    public static final int VIEW_CREATED = 0;
+    public static final int SURFACE_AVAILABLE = 1;
+    // the view asked the camera service for the camera
+    public static final int OPEN_CAMERA = 2;
+    // not reached when the view took over an already open camera
+    public static final int CAMERA_OPENED = 3;
+    public static final int SESSION_CONFIGURED = 4;
+    public static final int FIRST_FRAME = 5;
+    // first ImageScanner.scanImage call returned
+    public static final int FIRST_DECODE = 6;
+    public static final int FIRST_RESULT = 7;
+
+    static final String[] MILESTONE_NAMES = {"viewCreated", "surfaceAvailable", "openCamera", "cameraOpened",
+            "sessionConfigured", "firstFrame", "firstDecode", "firstResult"};
+
+    // System.nanoTime() per milestone, 0 until reached
+    private final AtomicLongArray times = new AtomicLongArray(MILESTONE_NAMES.length);
+
+    /**
+     * Records the milestone unless it was reached before.
+     *
+     * @return whether this was the first time
+     */
+    public boolean mark(int milestone, long nowNanos) {
+        return times.get(milestone) == 0 && times.compareAndSet(milestone, 0, nowNanos);
+    }
+
+    public boolean has(int milestone) {
+        return times.get(milestone) != 0;
+    }
+
+    public long getNanos(int milestone) {
+        return times.get(milestone);
+    }
+
+    /**
+     * Time from view creation to the milestone, or -1 if either was not reached.
+     */
+    public long getElapsedNanos(int milestone) {
+        long start = times.get(VIEW_CREATED);
+        long time = times.get(milestone);
+        return start == 0 || time == 0 ? -1 : time - start;
+    }
+
+    public static int getMilestoneCount() {
+        return MILESTONE_NAMES.length;
+    }
+
+    public static String getMilestoneName(int milestone) {
+        return MILESTONE_NAMES[milestone];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < MILESTONE_NAMES.length; i++) {
+            long elapsed = getElapsedNanos(i);
+            if (elapsed < 0)
+                continue;
+            if (builder.length() > 0)
+                builder.append(", ");
+            builder.append(MILESTONE_NAMES[i]).append(" +").append(elapsed / 100000 / 10.0).append(" ms");
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,55 @@
+package com.sunmi.scanner;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Coarse brightness layout of a frame: the mean luma of each cell of a GRID x GRID
+ * grid, sampled at SAMPLES x SAMPLES points per cell.
+ *
+ * Reading a few hundred bytes per frame is enough to tell a static scene from
+ * something moving in front of the camera, at a fraction of the cost of a decode.
+ */
+public final class SceneSignature {
+    public static final int GRID = 8;
+    public static final int SAMPLES = 4;
+    public static final int CELLS = GRID * GRID;
+
+    private SceneSignature() {
+    }
+
+    /**
+     * Fills the signature of the plane into cells, which holds at least CELLS entries.
+     *
+     * @param plane Y plane buffer, read with absolute offsets from its current position
+     */
+    public static void compute(ByteBuffer plane, int rowStride, int pixelStride, int width, int height,
+                               int[] cells) {
+        int base = plane.position();
+        int step = GRID * SAMPLES;
+        for (int gy = 0; gy < GRID; gy++) {
+            for (int gx = 0; gx < GRID; gx++) {
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES; sy++) {
+                    // sample points sit in the middle of their slot, away from the frame edges
+                    int y = ((gy * SAMPLES + sy) * 2 + 1) * height / (step * 2);
+                    int row = base + y * rowStride;
+                    for (int sx = 0; sx < SAMPLES; sx++) {
+                        int x = ((gx * SAMPLES + sx) * 2 + 1) * width / (step * 2);
+                        sum += plane.get(row + x * pixelStride) & 0xff;
+                    }
+                }
+                cells[gy * GRID + gx] = sum / (SAMPLES * SAMPLES);
+            }
+        }
+    }
+
+    /**
+     * Mean absolute difference between two signatures, in luma levels.
+     */
+    public static int difference(int[] lhs, int[] rhs) {
+        int sum = 0;
+        for (int i = 0; i < CELLS; i++)
+            sum += Math.abs(lhs[i] - rhs[i]);
+        return sum / CELLS;
+    }
+}
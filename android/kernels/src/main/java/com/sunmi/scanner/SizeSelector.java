@@ -0,0 +1,101 @@
+package com.sunmi.scanner;
+
+import java.util.Arrays;
+
+/**
+ * Stream size selection over plain width/height arrays, so it runs and benchmarks
+ * off-device. CameraPreview maps the camera's Size lists onto these.
+ */
+public final class SizeSelector {
+
+    private SizeSelector() {
+    }
+
+    /**
+     * Index of the smallest size at least as big as the view with the same aspect ratio,
+     * else the largest smaller one, else -1.
+     * Taken from https://github.com/googlesamples/android-Camera2Basic
+     */
+    public static int chooseOptimalSize(int[] widths, int[] heights, int textureViewWidth,
+                                        int textureViewHeight) {
+        int maxWidth = textureViewWidth, maxHeight = textureViewHeight;
+        int w = textureViewWidth;
+        int h = textureViewHeight;
+
+        // Pick the smallest of those big enough. If there is no one big enough, pick the
+        // largest of those not big enough.
+        int bigEnough = -1;
+        int notBigEnough = -1;
+        for (int i = 0; i < widths.length; i++) {
+            if (widths[i] <= maxWidth && heights[i] <= maxHeight &&
+                    heights[i] == widths[i] * h / w) {
+                if (widths[i] >= textureViewWidth && heights[i] >= textureViewHeight) {
+                    if (bigEnough < 0 || compareByArea(widths[i], heights[i], widths[bigEnough], heights[bigEnough]) < 0)
+                        bigEnough = i;
+                } else {
+                    if (notBigEnough < 0 || compareByArea(widths[i], heights[i], widths[notBigEnough], heights[notBigEnough]) > 0)
+                        notBigEnough = i;
+                }
+            }
+        }
+        return bigEnough >= 0 ? bigEnough : notBigEnough;
+    }
+
+    /**
+     * Index of the largest size within the pixel budget that shares the given aspect
+     * ratio, else the smallest one sharing it. Falls back to ignoring the aspect ratio
+     * when no size shares it, or when aspectWidth is 0.
+     */
+    public static int chooseAnalysisSize(int[] widths, int[] heights, long pixelBudget,
+                                         int aspectWidth, int aspectHeight) {
+        int best = -1;
+        int smallest = -1;
+        for (int i = 0; i < widths.length; i++) {
+            if (aspectWidth > 0 && !sameAspect(widths[i], heights[i], aspectWidth, aspectHeight))
+                continue;
+            if (smallest < 0 || compareByArea(widths[i], heights[i], widths[smallest], heights[smallest]) < 0)
+                smallest = i;
+            if ((long) widths[i] * heights[i] <= pixelBudget
+                    && (best < 0 || compareByArea(widths[i], heights[i], widths[best], heights[best]) > 0))
+                best = i;
+        }
+        if (best >= 0)
+            return best;
+        if (smallest >= 0)
+            return smallest;
+        // nothing shares the preview aspect ratio
+        return aspectWidth > 0 ? chooseAnalysisSize(widths, heights, pixelBudget, 0, 0) : 0;
+    }
+
+    /**
+     * Distinct pixel counts of the sizes sharing the given aspect ratio, ascending.
+     */
+    public static long[] matchingAreas(int[] widths, int[] heights, int aspectWidth, int aspectHeight) {
+        long[] areas = new long[widths.length];
+        int count = 0;
+        for (int i = 0; i < widths.length; i++) {
+            if (sameAspect(widths[i], heights[i], aspectWidth, aspectHeight))
+                areas[count++] = (long) widths[i] * heights[i];
+        }
+        Arrays.sort(areas, 0, count);
+
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || areas[distinct - 1] != areas[i])
+                areas[distinct++] = areas[i];
+        }
+        return Arrays.copyOf(areas, distinct);
+    }
+
+    public static int compareByArea(int lhsWidth, int lhsHeight, int rhsWidth, int rhsHeight) {
+        // We cast here to ensure the multiplications won't overflow
+        return Long.signum((long) lhsWidth * lhsHeight - (long) rhsWidth * rhsHeight);
+    }
+
+    static boolean sameAspect(int width, int height, int aspectWidth, int aspectHeight) {
+        // within 1%, so 1920x1080 and 1280x720 style ladders line up
+        long lhs = (long) width * aspectHeight;
+        long rhs = (long) height * aspectWidth;
+        return Math.abs(lhs - rhs) * 100 <= rhs;
+    }
+}
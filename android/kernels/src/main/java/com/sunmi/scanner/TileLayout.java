@@ -0,0 +1,50 @@
+package com.sunmi.scanner;
+
+/**
+ * Cuts a frame into overlapping square tiles for decoding in parallel.
+ *
+ * Neighbouring tiles share overlap pixels, so a code no larger than the overlap is
+ * always whole in at least one tile. The overlap is capped at half the tile size,
+ * so consecutive tiles always advance by at least half a tile. The last row and
+ * column are aligned with the frame edge rather than sticking out of it.
+ */
+public final class TileLayout {
+
+    private TileLayout() {
+    }
+
+    /**
+     * Tile rectangles as consecutive (left, top, width, height) quadruples. A tile size
+     * of 0, or one covering the frame, gives a single tile.
+     */
+    public static int[] compute(int width, int height, int tileSize, int overlap) {
+        int[] xs = starts(width, tileSize, overlap);
+        int[] ys = starts(height, tileSize, overlap);
+        int tileWidth = Math.min(width, tileSize > 0 ? tileSize : width);
+        int tileHeight = Math.min(height, tileSize > 0 ? tileSize : height);
+
+        int[] rects = new int[xs.length * ys.length * 4];
+        int i = 0;
+        for (int y : ys) {
+            for (int x : xs) {
+                rects[i++] = x;
+                rects[i++] = y;
+                rects[i++] = tileWidth;
+                rects[i++] = tileHeight;
+            }
+        }
+        return rects;
+    }
+
+    private static int[] starts(int length, int tileSize, int overlap) {
+        if (tileSize <= 0 || tileSize >= length)
+            return new int[]{0};
+
+        int step = tileSize - Math.max(0, Math.min(overlap, tileSize / 2));
+        int count = (length - tileSize + step - 1) / step + 1;
+        int[] starts = new int[count];
+        for (int i = 0; i < count; i++)
+            starts[i] = Math.min(i * step, length - tileSize);
+        return starts;
+    }
+}
@@ -0,0 +1,111 @@
+package com.sunmi.scanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replays recorded frames into a FrameSink in place of the camera.
+ *
+ * Frames are raw Y800 or planar/semi-planar YUV 4:2:0 files (NV21, I420), whose first
+ * width * height bytes are the luma plane. They are loaded up front, so disk reads do
+ * not show up in the measurements, and delivered from direct buffers like ImageReader
+ * planes.
+ */
+public class ReplayFrameSource implements FrameSource {
+    // frame_0001_1280x720.yuv
+    private static final Pattern SIZE = Pattern.compile("(\\d+)x(\\d+)");
+
+    private final List<ByteBuffer> frames = new ArrayList<>();
+    private final int width;
+    private final int height;
+    private FrameSink sink;
+
+    /**
+     * Loads every regular file of the directory in name order.
+     *
+     * @param width  frame width, or 0 to take it from the file names
+     * @param height frame height, or 0 to take it from the file names
+     */
+    public ReplayFrameSource(File directory, int width, int height) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null)
+            throw new IOException("Not a directory: " + directory);
+        Arrays.sort(files);
+
+        for (File file : files) {
+            if (!file.isFile())
+                continue;
+            if (width <= 0 || height <= 0) {
+                Matcher matcher = SIZE.matcher(file.getName());
+                if (!matcher.find())
+                    throw new IOException("No frame size given and none in the file name: " + file);
+                width = Integer.parseInt(matcher.group(1));
+                height = Integer.parseInt(matcher.group(2));
+            }
+
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            if (bytes.length < width * height)
+                throw new IOException(file + " is smaller than a " + width + "x" + height + " luma plane");
+            ByteBuffer plane = ByteBuffer.allocateDirect(width * height);
+            plane.put(bytes, 0, width * height);
+            plane.flip();
+            frames.add(plane);
+        }
+        if (frames.isEmpty())
+            throw new IOException("No frames in " + directory);
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public void setFrameSink(FrameSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Delivers the frames in order on the calling thread, timestamped with
+     * System.nanoTime() at delivery.
+     *
+     * @param fps   target frame rate, or 0 to deliver as fast as the sink accepts them
+     * @param loops how many times to go through the recording
+     * @return the number of frames delivered
+     */
+    public long replay(double fps, int loops) throws InterruptedException {
+        long intervalNanos = fps > 0 ? (long) (1e9 / fps) : 0;
+        long next = System.nanoTime();
+        long delivered = 0;
+        for (int loop = 0; loop < loops; loop++) {
+            for (ByteBuffer plane : frames) {
+                if (intervalNanos > 0) {
+                    long wait = next - System.nanoTime();
+                    if (wait > 0)
+                        Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+                    next += intervalNanos;
+                }
+                plane.rewind();
+                sink.onFrame(plane, width, 1, width, height, System.nanoTime());
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    public int getFrameCount() {
+        return frames.size();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
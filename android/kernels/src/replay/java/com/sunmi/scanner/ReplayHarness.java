@@ -0,0 +1,178 @@
+package com.sunmi.scanner;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs a directory of recorded frames through ScanPipeline and reports throughput,
+ * end-to-end latency and hit rate, so pipeline changes can be compared on the same
+ * frames without a device.
+ *
+ * <pre>
+ * gradle replay --args="frames/ --fps=30 --workers=2 --decode-cost=8000 --hit-rate=20"
+ * </pre>
+ *
+ * Options:
+ * <ul>
+ * <li>--size=WxH frame size, otherwise taken from the file names</li>
+ * <li>--fps=N target frame rate, 0 (the default) replays as fast as possible</li>
+ * <li>--loops=N passes over the recording, default 1</li>
+ * <li>--workers=N decode threads, default 1</li>
+ * <li>--interval=MS scan interval, default 0</li>
+ * <li>--padding=N scan window border, default 10 as on the view</li>
+ * <li>--decode-cost=US simulated decode time in microseconds, default 5000</li>
+ * <li>--hit-rate=PCT share of frames the simulated decoder finds a code in, default 10</li>
+ * <li>--min-sharpness=N quality gate sharpness minimum, default 0 (off)</li>
+ * <li>--unchanged-threshold=N quality gate unchanged-scene threshold, default 0 (off)</li>
+ * <li>--enhance=MODE second pass over missed frames: off (default), contrast or binarize.
+ * The enhancement cost is real; with the simulated decoder its hits are not</li>
+ * <li>--fusion-frames=N failed frames averaged into one fused frame, default 0 (off)</li>
+ * <li>--fusion-max-difference=N mean luma difference that restarts fusion, default 8</li>
+ * <li>--decoder=CLASS a DecodeExecutor.Decoder to use instead of the simulated one,
+ * with a public (int workers) or no-argument constructor</li>
+ * </ul>
+ */
+public final class ReplayHarness {
+
+    private ReplayHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0 || args[0].startsWith("--")) {
+            System.err.println("Usage: ReplayHarness <frame directory> [--size=WxH] [--fps=N] [--loops=N]"
+                    + " [--workers=N] [--interval=MS] [--padding=N] [--decode-cost=US] [--hit-rate=PCT]"
+                    + " [--min-sharpness=N] [--unchanged-threshold=N] [--enhance=MODE]"
+                    + " [--fusion-frames=N] [--fusion-max-difference=N] [--decoder=CLASS]");
+            System.exit(2);
+        }
+
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0)
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+
+        int width = 0;
+        int height = 0;
+        String size = options.get("size");
+        if (size != null) {
+            int x = size.indexOf('x');
+            width = Integer.parseInt(size.substring(0, x));
+            height = Integer.parseInt(size.substring(x + 1));
+        }
+        double fps = Double.parseDouble(option(options, "fps", "0"));
+        int loops = Integer.parseInt(option(options, "loops", "1"));
+        int workers = Integer.parseInt(option(options, "workers", "1"));
+        long interval = Long.parseLong(option(options, "interval", "0"));
+        int padding = Integer.parseInt(option(options, "padding", "10"));
+        final long decodeCost = Long.parseLong(option(options, "decode-cost", "5000"));
+        final int hitRate = Integer.parseInt(option(options, "hit-rate", "10"));
+        int minSharpness = Integer.parseInt(option(options, "min-sharpness", "0"));
+        int unchangedThreshold = Integer.parseInt(option(options, "unchanged-threshold", "0"));
+        String enhance = option(options, "enhance", FrameEnhancers.MODE_OFF);
+        int fusionFrames = Integer.parseInt(option(options, "fusion-frames", "0"));
+        int fusionMaxDifference = Integer.parseInt(option(options, "fusion-max-difference", "8"));
+        final String decoderClass = options.get("decoder");
+
+        ReplayFrameSource source = new ReplayFrameSource(new File(args[0]), width, height);
+        final LatencyHistogram endToEnd = new LatencyHistogram();
+        ScanPipeline pipeline = new ScanPipeline("replay", new ScanPipeline.DecoderFactory() {
+            @Override
+            public DecodeExecutor.Decoder create(int workers) {
+                DecodeExecutor.Decoder decoder = decoderClass != null
+                        ? loadDecoder(decoderClass, workers)
+                        : new SimulatedDecoder(decodeCost, hitRate);
+                return new EndToEndDecoder(decoder, endToEnd);
+            }
+        });
+        pipeline.setWorkers(workers);
+        pipeline.setScanInterval(interval);
+        pipeline.setPadding(padding);
+        pipeline.getQualityGate().setMinSharpness(minSharpness);
+        pipeline.getQualityGate().setUnchangedThreshold(unchangedThreshold);
+        pipeline.setEnhancer(FrameEnhancers.factory(enhance, 1, 31, 15));
+        pipeline.setFusionFrames(fusionFrames);
+        pipeline.setFusionMaxDifference(fusionMaxDifference);
+        pipeline.configure(source.getWidth() - 2 * padding, source.getHeight() - 2 * padding);
+        source.setFrameSink(pipeline);
+
+        long start = System.nanoTime();
+        long delivered = source.replay(fps, loops);
+        DecodeExecutor executor = pipeline.getDecodeExecutor();
+        // every offered frame is decoded, replaced by a newer one or skipped by the interval
+        while (!executor.isIdle())
+            Thread.sleep(1);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pipeline.stop();
+
+        ScanMetrics metrics = pipeline.getMetrics();
+        System.out.printf("frames      %d x %dx%d, %d delivered in %.2f s%n", source.getFrameCount(),
+                source.getWidth(), source.getHeight(), delivered, seconds);
+        System.out.printf("throughput  %.1f frames/s delivered, %.1f frames/s decoded%n",
+                delivered / seconds, executor.getDecodedCount() / seconds);
+        System.out.printf("frames      %d decoded, %d dropped, %d skipped by interval or padding%n",
+                executor.getDecodedCount(), metrics.getFramesDropped(), executor.getSkippedCount());
+        System.out.printf("gate        %d blurry, %d unchanged skipped%n",
+                pipeline.getQualityGate().getBlurrySkippedCount(), pipeline.getQualityGate().getUnchangedSkippedCount());
+        System.out.printf("hit rate    %.3f (%d of %d), %d decoder errors%n", metrics.getHitRate(),
+                metrics.getDecodeHits(), metrics.getDecodeAttempts(), metrics.getDecodeErrors());
+        System.out.printf("enhanced    %d of %d hit, %.3f hit rate without%n", metrics.getEnhancedHits(),
+                metrics.getEnhancedAttempts(), metrics.getHitRateWithoutEnhancement());
+        System.out.printf("fused       %d of %d hit, %d runs restarted by scene changes%n", metrics.getFusedHits(),
+                metrics.getFusedAttempts(), pipeline.getFusionResetCount());
+        print("end-to-end", endToEnd);
+        print("copy", metrics.getStage(ScanMetrics.STAGE_COPY));
+        print("decode", metrics.getStage(ScanMetrics.STAGE_DECODE));
+        print("quality", metrics.getStage(ScanMetrics.STAGE_QUALITY));
+        print("enhance", metrics.getStage(ScanMetrics.STAGE_ENHANCE));
+        print("fusion", metrics.getStage(ScanMetrics.STAGE_FUSION));
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value != null ? value : defaultValue;
+    }
+
+    private static void print(String name, LatencyHistogram histogram) {
+        System.out.printf("%-11s p50 %d us, p95 %d us, p99 %d us, mean %d us%n", name,
+                histogram.getPercentileMicros(50), histogram.getPercentileMicros(95),
+                histogram.getPercentileMicros(99), histogram.getMeanMicros());
+    }
+
+    private static DecodeExecutor.Decoder loadDecoder(String className, int workers) {
+        try {
+            Class<?> type = Class.forName(className);
+            try {
+                return (DecodeExecutor.Decoder) type.getConstructor(int.class).newInstance(workers);
+            } catch (NoSuchMethodException e) {
+                return (DecodeExecutor.Decoder) type.getConstructor().newInstance();
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Cannot create decoder " + className, e);
+        }
+    }
+
+    /**
+     * Measures from delivery into the pipeline to the end of the decode.
+     */
+    private static class EndToEndDecoder implements DecodeExecutor.Decoder {
+        private final DecodeExecutor.Decoder decoder;
+        private final LatencyHistogram histogram;
+
+        EndToEndDecoder(DecodeExecutor.Decoder decoder, LatencyHistogram histogram) {
+            this.decoder = decoder;
+            this.histogram = histogram;
+        }
+
+        @Override
+        public boolean decode(FramePool.Frame frame, int worker) {
+            boolean hit = decoder.decode(frame, worker);
+            histogram.record(System.nanoTime() - frame.timestampNanos);
+            return hit;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.sunmi.scanner;
+
+/**
+ * Stand-in for the Sunmi decoder on hosts without the native library.
+ *
+ * Each decode reads the frame for a fixed amount of CPU time and reports a hit for a
+ * fixed share of frames. Whether a frame hits depends only on its content, so runs
+ * over the same recording are comparable even when different frames get dropped.
+ */
+public class SimulatedDecoder implements DecodeExecutor.Decoder {
+    private final long costNanos;
+    private final int hitPercent;
+
+    // keeps the busy loop from being optimised away
+    private volatile int sink;
+
+    public SimulatedDecoder(long costMicros, int hitPercent) {
+        this.costNanos = costMicros * 1000L;
+        this.hitPercent = hitPercent;
+    }
+
+    @Override
+    public boolean decode(FramePool.Frame frame, int worker) {
+        int length = frame.width * frame.height;
+        byte[] data = frame.data;
+        long deadline = System.nanoTime() + costNanos;
+        int sum = 0;
+        int i = 0;
+        do {
+            // walk the frame like a real decoder would, until the cost is spent
+            for (int end = Math.min(i + 4096, length); i < end; i += 7)
+                sum += data[i];
+            if (i >= length)
+                i = 0;
+        } while (System.nanoTime() < deadline);
+        sink = sum;
+
+        return Math.floorMod(signature(data, length), 100) < hitPercent;
+    }
+
+    private static int signature(byte[] data, int length) {
+        int hash = 17;
+        for (int i = 0; i < length; i += 997)
+            hash = hash * 31 + data[i];
+        return hash;
+    }
+}
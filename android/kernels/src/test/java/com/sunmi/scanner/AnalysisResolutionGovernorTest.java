@@ -0,0 +1,91 @@
+package com.sunmi.scanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AnalysisResolutionGovernorTest {
+    private static final long MS = 1000000L;
+    private static final long FRAME_INTERVAL = 33 * MS;
+    // 640x480, 1280x720, 1920x1080
+    private static final long[] LADDER = {307200, 921600, 2073600};
+
+    /**
+     * Feeds decodes of the given latency until the governor switches, returning the
+     * new budget or 0 if it did not switch within the given number of decodes.
+     */
+    private static long feed(AnalysisResolutionGovernor governor, long latencyNanos, boolean success, int decodes) {
+        for (int i = 0; i < decodes; i++) {
+            long budget = governor.onDecode(latencyNanos, success, FRAME_INTERVAL);
+            if (budget != 0)
+                return budget;
+        }
+        return 0;
+    }
+
+    @Test
+    public void startsAtLargestSizeWithinBudget() {
+        assertEquals(921600, new AnalysisResolutionGovernor(LADDER, 1000000).getPixelBudget());
+        assertEquals(2073600, new AnalysisResolutionGovernor(LADDER, Long.MAX_VALUE).getPixelBudget());
+        // nothing fits, so the smallest size
+        assertEquals(307200, new AnalysisResolutionGovernor(LADDER, 1000).getPixelBudget());
+        assertEquals(0, new AnalysisResolutionGovernor(new long[0], 1000).getPixelBudget());
+    }
+
+    @Test
+    public void slowDecodesStepDown() {
+        AnalysisResolutionGovernor governor = new AnalysisResolutionGovernor(LADDER, 2073600);
+        // judged only after a few samples
+        for (int i = 0; i < 9; i++)
+            assertEquals(0, governor.onDecode(50 * MS, true, FRAME_INTERVAL));
+        assertEquals(921600, governor.onDecode(50 * MS, true, FRAME_INTERVAL));
+        assertEquals(921600, governor.getPixelBudget());
+    }
+
+    @Test
+    public void samplesStartOverAfterStep() {
+        AnalysisResolutionGovernor governor = new AnalysisResolutionGovernor(LADDER, 2073600);
+        feed(governor, 50 * MS, true, 10);
+        for (int i = 0; i < 9; i++)
+            assertEquals(0, governor.onDecode(50 * MS, true, FRAME_INTERVAL));
+        assertEquals(307200, governor.onDecode(50 * MS, true, FRAME_INTERVAL));
+        // already at the bottom of the ladder
+        assertEquals(0, feed(governor, 50 * MS, true, 100));
+    }
+
+    @Test
+    public void fastDecodesStay() {
+        AnalysisResolutionGovernor governor = new AnalysisResolutionGovernor(LADDER, 921600);
+        assertEquals(0, feed(governor, 10 * MS, true, 200));
+    }
+
+    @Test
+    public void failuresStepUpWhenLargerSizeFits() {
+        AnalysisResolutionGovernor governor = new AnalysisResolutionGovernor(LADDER, 307200);
+        // 10 ms at 640x480 predicts 30 ms at 1280x720, within the frame interval
+        for (int i = 0; i < 29; i++)
+            assertEquals(0, governor.onDecode(10 * MS, false, FRAME_INTERVAL));
+        assertEquals(921600, governor.onDecode(10 * MS, false, FRAME_INTERVAL));
+    }
+
+    @Test
+    public void failuresDoNotStepUpWhenLargerSizeIsTooSlow() {
+        AnalysisResolutionGovernor governor = new AnalysisResolutionGovernor(LADDER, 307200);
+        // 20 ms at 640x480 predicts 60 ms at 1280x720
+        assertEquals(0, feed(governor, 20 * MS, false, 100));
+    }
+
+    @Test
+    public void successResetsFailureRun() {
+        AnalysisResolutionGovernor governor = new AnalysisResolutionGovernor(LADDER, 307200);
+        for (int i = 0; i < 100; i++)
+            assertEquals(0, governor.onDecode(10 * MS, i % 20 == 19, FRAME_INTERVAL));
+    }
+
+    @Test
+    public void unknownFrameIntervalStays() {
+        AnalysisResolutionGovernor governor = new AnalysisResolutionGovernor(LADDER, 2073600);
+        for (int i = 0; i < 100; i++)
+            assertEquals(0, governor.onDecode(500 * MS, false, 0));
+    }
+}
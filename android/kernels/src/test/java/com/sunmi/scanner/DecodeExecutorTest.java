@@ -0,0 +1,258 @@
+package com.sunmi.scanner;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class DecodeExecutorTest {
+
+    /**
+     * Takes a fixed time per frame and records when each decode ran.
+     */
+    private static class SlowDecoder implements DecodeExecutor.Decoder {
+        private final long millis;
+        final List<long[]> decodes = new ArrayList<>();
+
+        SlowDecoder(long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public boolean decode(FramePool.Frame frame, int worker) {
+            long start = System.nanoTime();
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this) {
+                decodes.add(new long[]{start, System.nanoTime(), frame.sequence});
+            }
+            return false;
+        }
+
+        synchronized List<long[]> getDecodes() {
+            return new ArrayList<>(decodes);
+        }
+    }
+
+    /**
+     * Holds every decode until released, recording the sequence of each decoded frame.
+     */
+    private static class BlockingDecoder implements DecodeExecutor.Decoder {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Long> sequences = new ArrayList<>();
+
+        @Override
+        public boolean decode(FramePool.Frame frame, int worker) {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this) {
+                sequences.add(frame.sequence);
+            }
+            return false;
+        }
+
+        synchronized List<Long> getSequences() {
+            return new ArrayList<>(sequences);
+        }
+    }
+
+    private DecodeExecutor executor;
+
+    @After
+    public void shutDown() {
+        if (executor != null)
+            executor.shutdown();
+    }
+
+    private DecodeExecutor executor(SlowDecoder decoder, int workers) {
+        FramePool pool = new FramePool(workers + 2);
+        pool.configure(4, 4);
+        executor = new DecodeExecutor("test", pool, decoder, workers);
+        return executor;
+    }
+
+    /**
+     * Offers a frame every period for the given time, like a camera would.
+     */
+    private static void feed(DecodeExecutor executor, long periodMillis, long durationMillis) throws InterruptedException {
+        long sequence = 0;
+        long end = System.nanoTime() + durationMillis * 1000000L;
+        while (System.nanoTime() < end) {
+            FramePool.Frame frame = executor.getFramePool().acquire();
+            if (frame != null) {
+                frame.sequence = ++sequence;
+                executor.offer(frame);
+            }
+            Thread.sleep(periodMillis);
+        }
+    }
+
+    private static FramePool.Frame frame(DecodeExecutor executor, long sequence) {
+        FramePool.Frame frame = executor.getFramePool().acquire();
+        assertNotNull("pool exhausted", frame);
+        frame.sequence = sequence;
+        return frame;
+    }
+
+    /**
+     * Acquires every frame of the pool, which fails if one was not given back.
+     */
+    private static void assertAllReleased(FramePool pool) {
+        FramePool.Frame[] frames = new FramePool.Frame[pool.getSize()];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = pool.acquire();
+            assertNotNull("frame " + i + " not released", frames[i]);
+        }
+        for (FramePool.Frame frame : frames)
+            pool.release(frame);
+    }
+
+    private static void awaitIdle(DecodeExecutor executor) throws InterruptedException {
+        for (int i = 0; i < 200 && !executor.isIdle(); i++)
+            Thread.sleep(10);
+    }
+
+    @Test
+    public void intervalHoldsWhenDecodesOutlastFramePeriod() throws InterruptedException {
+        // decodes take longer than the 10 ms frame period, so frames keep arriving mid-decode
+        SlowDecoder decoder = new SlowDecoder(50);
+        DecodeExecutor executor = executor(decoder, 1);
+        executor.setInterval(200);
+        feed(executor, 10, 1200);
+        awaitIdle(executor);
+
+        List<long[]> decodes = decoder.getDecodes();
+        // one decode per 250 ms cycle of decode plus interval
+        assertTrue("decoded " + decodes.size(), decodes.size() >= 3 && decodes.size() <= 6);
+        for (int i = 1; i < decodes.size(); i++) {
+            long gap = decodes.get(i)[0] - decodes.get(i - 1)[1];
+            assertTrue("decode started " + gap / 1000000 + " ms after the previous one", gap >= 200 * 1000000L);
+        }
+        assertTrue(executor.getSkippedCount() > 0);
+    }
+
+    @Test
+    public void intervalSpacesDecodesAcrossWorkers() throws InterruptedException {
+        SlowDecoder decoder = new SlowDecoder(250);
+        DecodeExecutor executor = executor(decoder, 3);
+        executor.setInterval(100);
+        feed(executor, 10, 1500);
+        awaitIdle(executor);
+
+        List<long[]> decodes = decoder.getDecodes();
+        Collections.sort(decodes, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return Long.compare(a[0], b[0]);
+            }
+        });
+        // scheduling may delay the recorded start behind the executor's by a little
+        long slack = 20 * 1000000L;
+        boolean overlapped = false;
+        for (int i = 1; i < decodes.size(); i++) {
+            long[] decode = decodes.get(i);
+            for (int j = 0; j < i; j++) {
+                long[] earlier = decodes.get(j);
+                assertTrue("decodes started " + (decode[0] - earlier[0]) / 1000000 + " ms apart",
+                        decode[0] - earlier[0] >= 100 * 1000000L - slack);
+                if (earlier[1] <= decode[0])
+                    assertTrue("decode started " + (decode[0] - earlier[1]) / 1000000 + " ms after an end",
+                            decode[0] - earlier[1] >= 100 * 1000000L - slack);
+                else
+                    overlapped = true;
+            }
+        }
+        // the workers still decode in parallel
+        assertTrue(overlapped);
+        assertTrue("decoded " + decodes.size(), decodes.size() <= 15);
+    }
+
+    @Test
+    public void withoutIntervalDecodesBackToBack() throws InterruptedException {
+        SlowDecoder decoder = new SlowDecoder(50);
+        DecodeExecutor executor = executor(decoder, 1);
+        feed(executor, 10, 600);
+        awaitIdle(executor);
+
+        int decodes = decoder.getDecodes().size();
+        assertTrue("decoded " + decodes, decodes >= 8);
+        assertEquals(0, executor.getSkippedCount());
+    }
+
+    @Test
+    public void pendingFrameIsReplacedByNewerOne() throws InterruptedException {
+        BlockingDecoder decoder = new BlockingDecoder();
+        FramePool pool = new FramePool(4);
+        pool.configure(4, 4);
+        executor = new DecodeExecutor("test", pool, decoder, 1);
+
+        assertFalse(executor.offer(frame(executor, 1)));
+        assertTrue(decoder.started.await(1, TimeUnit.SECONDS));
+        // the only worker is busy, so frame 2 waits in the mailbox until frame 3 replaces it
+        assertFalse(executor.offer(frame(executor, 2)));
+        assertTrue(executor.offer(frame(executor, 3)));
+        decoder.release.countDown();
+        awaitIdle(executor);
+
+        assertEquals(Arrays.asList(1L, 3L), decoder.getSequences());
+        assertEquals(3, executor.getOfferedCount());
+        assertEquals(1, executor.getOverwrittenCount());
+        assertEquals(2, executor.getDecodedCount());
+        assertAllReleased(pool);
+    }
+
+    @Test
+    public void stopReleasesPendingFrameAndNextOfferRestarts() throws InterruptedException {
+        BlockingDecoder decoder = new BlockingDecoder();
+        FramePool pool = new FramePool(4);
+        pool.configure(4, 4);
+        executor = new DecodeExecutor("test", pool, decoder, 1);
+
+        executor.offer(frame(executor, 1));
+        assertTrue(decoder.started.await(1, TimeUnit.SECONDS));
+        executor.offer(frame(executor, 2));
+        executor.stop();
+        decoder.release.countDown();
+        awaitIdle(executor);
+        // frame 1 was already decoding and finishes, frame 2 is dropped with the mailbox
+        assertEquals(Arrays.asList(1L), decoder.getSequences());
+        assertAllReleased(pool);
+
+        executor.offer(frame(executor, 3));
+        awaitIdle(executor);
+        assertEquals(Arrays.asList(1L, 3L), decoder.getSequences());
+        assertAllReleased(pool);
+    }
+
+    @Test
+    public void framesOfferedAfterShutdownGoBackToPool() throws InterruptedException {
+        SlowDecoder decoder = new SlowDecoder(0);
+        DecodeExecutor executor = executor(decoder, 1);
+        executor.shutdown();
+
+        assertTrue(executor.offer(frame(executor, 1)));
+        Thread.sleep(50);
+        assertEquals(0, decoder.getDecodes().size());
+        assertEquals(0, executor.getOfferedCount());
+        assertAllReleased(executor.getFramePool());
+    }
+}
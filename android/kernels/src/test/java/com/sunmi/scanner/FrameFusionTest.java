@@ -0,0 +1,166 @@
+package com.sunmi.scanner;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameFusionTest {
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 80;
+
+    private static FramePool.Frame frame(int width, int height, int luma, long sequence) {
+        FramePool.Frame frame = new FramePool.Frame();
+        frame.data = new byte[width * height];
+        Arrays.fill(frame.data, (byte) luma);
+        frame.width = width;
+        frame.height = height;
+        frame.sequence = sequence;
+        frame.timestampNanos = sequence * 1000;
+        return frame;
+    }
+
+    private static FramePool.Frame frame(int luma, long sequence) {
+        return frame(WIDTH, HEIGHT, luma, sequence);
+    }
+
+    private static FramePool.Frame output() {
+        FramePool.Frame fused = new FramePool.Frame();
+        fused.data = new byte[WIDTH * HEIGHT];
+        return fused;
+    }
+
+    private static FrameFusion fusion(int frames) {
+        FrameFusion fusion = new FrameFusion();
+        fusion.setFrames(frames);
+        return fusion;
+    }
+
+    @Test
+    public void disabledByDefault() {
+        FrameFusion fusion = new FrameFusion();
+        assertFalse(fusion.isEnabled());
+        assertFalse(fusion.add(frame(10, 1), output()));
+    }
+
+    @Test
+    public void averagesRunOfFrames() {
+        FrameFusion fusion = fusion(4);
+        FramePool.Frame fused = output();
+        assertFalse(fusion.add(frame(100, 1), fused));
+        assertFalse(fusion.add(frame(104, 2), fused));
+        assertFalse(fusion.add(frame(101, 3), fused));
+        assertTrue(fusion.add(frame(103, 4), fused));
+
+        byte[] expected = new byte[WIDTH * HEIGHT];
+        // (100 + 104 + 101 + 103) / 4 = 102
+        Arrays.fill(expected, (byte) 102);
+        assertArrayEquals(expected, fused.data);
+        assertEquals(WIDTH, fused.width);
+        assertEquals(HEIGHT, fused.height);
+        assertEquals(4, fused.sequence);
+        assertEquals(4000, fused.timestampNanos);
+    }
+
+    @Test
+    public void averageIsRounded() {
+        FrameFusion fusion = fusion(2);
+        FramePool.Frame fused = output();
+        fusion.add(frame(100, 1), fused);
+        assertTrue(fusion.add(frame(103, 2), fused));
+        assertEquals(102, fused.data[0] & 0xff);
+    }
+
+    @Test
+    public void nextRunStartsAfterOutput() {
+        FrameFusion fusion = fusion(2);
+        FramePool.Frame fused = output();
+        fusion.add(frame(100, 1), fused);
+        assertTrue(fusion.add(frame(100, 2), fused));
+        assertFalse(fusion.add(frame(110, 3), fused));
+        assertTrue(fusion.add(frame(110, 4), fused));
+        assertEquals(110, fused.data[0] & 0xff);
+    }
+
+    @Test
+    public void sceneChangeStartsNewRun() {
+        FrameFusion fusion = fusion(3);
+        fusion.setMaxDifference(8);
+        FramePool.Frame fused = output();
+        fusion.add(frame(100, 1), fused);
+        fusion.add(frame(100, 2), fused);
+        // far from the average of the first two, so it starts over instead of completing the run
+        assertFalse(fusion.add(frame(200, 3), fused));
+        assertEquals(1, fusion.getResetCount());
+        fusion.add(frame(200, 4), fused);
+        assertTrue(fusion.add(frame(200, 5), fused));
+        assertEquals(200, fused.data[0] & 0xff);
+    }
+
+    @Test
+    public void smallDifferencesStayInRun() {
+        FrameFusion fusion = fusion(3);
+        fusion.setMaxDifference(8);
+        FramePool.Frame fused = output();
+        fusion.add(frame(100, 1), fused);
+        fusion.add(frame(106, 2), fused);
+        assertTrue(fusion.add(frame(98, 3), fused));
+        assertEquals(0, fusion.getResetCount());
+    }
+
+    @Test
+    public void resetEndsRun() {
+        FrameFusion fusion = fusion(2);
+        FramePool.Frame fused = output();
+        fusion.add(frame(100, 1), fused);
+        fusion.reset();
+        assertFalse(fusion.add(frame(120, 2), fused));
+        assertTrue(fusion.add(frame(120, 3), fused));
+        assertEquals(120, fused.data[0] & 0xff);
+        assertEquals(0, fusion.getResetCount());
+    }
+
+    @Test
+    public void sizeChangeStartsNewRun() {
+        FrameFusion fusion = fusion(2);
+        FramePool.Frame fused = output();
+        fusion.add(frame(100, 1), fused);
+        assertFalse(fusion.add(frame(WIDTH / 2, HEIGHT / 2, 100, 2), fused));
+        assertTrue(fusion.add(frame(WIDTH / 2, HEIGHT / 2, 100, 3), fused));
+        assertEquals(WIDTH / 2, fused.width);
+    }
+
+    @Test
+    public void frameCountIsClamped() {
+        FrameFusion fusion = fusion(1);
+        FramePool.Frame fused = output();
+        // one frame is raised to two
+        assertFalse(fusion.add(frame(100, 1), fused));
+        assertTrue(fusion.add(frame(100, 2), fused));
+
+        fusion.setFrames(100);
+        for (int i = 0; i < 15; i++)
+            assertFalse(fusion.add(frame(100, i), fused));
+        assertTrue(fusion.add(frame(100, 15), fused));
+
+        fusion.setFrames(-1);
+        assertFalse(fusion.isEnabled());
+    }
+
+    @Test
+    public void settingSameFrameCountKeepsRun() {
+        FrameFusion fusion = fusion(2);
+        FramePool.Frame fused = output();
+        fusion.add(frame(100, 1), fused);
+        fusion.setFrames(2);
+        assertTrue(fusion.add(frame(100, 2), fused));
+
+        fusion.add(frame(100, 3), fused);
+        fusion.setFrames(3);
+        assertFalse(fusion.add(frame(100, 4), fused));
+    }
+}
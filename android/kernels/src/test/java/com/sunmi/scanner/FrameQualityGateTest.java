@@ -0,0 +1,119 @@
+package com.sunmi.scanner;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameQualityGateTest {
+
+    private static int[] signature(int luma) {
+        int[] signature = new int[SceneSignature.CELLS];
+        Arrays.fill(signature, luma);
+        return signature;
+    }
+
+    private static FrameQualityGate gate(int minSharpness, int unchangedThreshold) {
+        FrameQualityGate gate = new FrameQualityGate();
+        gate.setMinSharpness(minSharpness);
+        gate.setUnchangedThreshold(unchangedThreshold);
+        return gate;
+    }
+
+    @Test
+    public void disabledGateAcceptsEverything() {
+        FrameQualityGate gate = new FrameQualityGate();
+        assertFalse(gate.isEnabled());
+        gate.onDecoded(false, 0, signature(50));
+        assertTrue(gate.accept(0, signature(50)));
+    }
+
+    @Test
+    public void flatPlaneHasNoSharpness() {
+        ByteBuffer plane = ByteBuffer.allocate(64 * 48);
+        Arrays.fill(plane.array(), (byte) 128);
+        assertEquals(0, FrameQualityGate.sharpness(plane, 64, 1, 64, 48));
+    }
+
+    @Test
+    public void edgesRaiseSharpness() {
+        int width = 64;
+        int height = 48;
+        byte[] sharp = new byte[width * height];
+        byte[] soft = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // one pixel stripes against a gentle ramp
+                sharp[y * width + x] = (byte) (x % 2 == 0 ? 0 : 255);
+                soft[y * width + x] = (byte) (x * 2);
+            }
+        }
+        int sharpScore = FrameQualityGate.sharpness(ByteBuffer.wrap(sharp), width, 1, width, height);
+        int softScore = FrameQualityGate.sharpness(ByteBuffer.wrap(soft), width, 1, width, height);
+        assertEquals(255 * 255, sharpScore);
+        assertEquals(4, softScore);
+    }
+
+    @Test
+    public void sharpnessReadsFromBufferPosition() {
+        int width = 64;
+        int height = 48;
+        byte[] bytes = new byte[10 + width * height];
+        for (int i = 10; i < bytes.length; i++)
+            bytes[i] = (byte) ((i - 10) % 2 == 0 ? 0 : 255);
+        ByteBuffer plane = ByteBuffer.wrap(bytes);
+        plane.position(10);
+        assertEquals(255 * 255, FrameQualityGate.sharpness(plane, width, 1, width, height));
+        assertEquals(10, plane.position());
+    }
+
+    @Test
+    public void blurryFramesAreSkipped() {
+        FrameQualityGate gate = gate(100, 0);
+        assertFalse(gate.accept(99, signature(50)));
+        assertTrue(gate.accept(100, signature(50)));
+        assertEquals(1, gate.getBlurrySkippedCount());
+        assertEquals(100, gate.getLastSharpness());
+    }
+
+    @Test
+    public void unchangedSceneAfterFailureIsSkipped() {
+        FrameQualityGate gate = gate(0, 4);
+        assertTrue(gate.accept(200, signature(50)));
+        gate.onDecoded(false, 200, signature(50));
+
+        assertFalse(gate.accept(200, signature(52)));
+        assertEquals(1, gate.getUnchangedSkippedCount());
+        // a changed scene is decoded again
+        assertTrue(gate.accept(200, signature(60)));
+    }
+
+    @Test
+    public void noticeablySharperViewGetsAnotherTry() {
+        FrameQualityGate gate = gate(0, 4);
+        gate.onDecoded(false, 200, signature(50));
+        // up to an eighth sharper still counts as the same view
+        assertFalse(gate.accept(225, signature(50)));
+        assertTrue(gate.accept(226, signature(50)));
+    }
+
+    @Test
+    public void successfulDecodeClearsFailedScene() {
+        FrameQualityGate gate = gate(0, 4);
+        gate.onDecoded(false, 200, signature(50));
+        gate.onDecoded(true, 200, signature(50));
+        assertTrue(gate.accept(200, signature(50)));
+    }
+
+    @Test
+    public void changingThresholdClearsFailedScene() {
+        FrameQualityGate gate = gate(0, 4);
+        gate.onDecoded(false, 200, signature(50));
+        gate.setUnchangedThreshold(8);
+        assertTrue(gate.accept(200, signature(50)));
+    }
+}
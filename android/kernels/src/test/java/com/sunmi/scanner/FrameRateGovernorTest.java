@@ -0,0 +1,117 @@
+package com.sunmi.scanner;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameRateGovernorTest {
+    private static final long MS = 1000000L;
+
+    private static int[] signature(int luma) {
+        int[] signature = new int[SceneSignature.CELLS];
+        Arrays.fill(signature, luma);
+        return signature;
+    }
+
+    private final List<Boolean> changes = new ArrayList<>();
+
+    private FrameRateGovernor governor(long timeoutMillis) {
+        FrameRateGovernor governor = new FrameRateGovernor();
+        governor.setIdleTimeoutMillis(timeoutMillis);
+        governor.setSceneThreshold(8);
+        governor.setListener(new FrameRateGovernor.Listener() {
+            @Override
+            public void onIdleChanged(boolean idle) {
+                changes.add(idle);
+            }
+        });
+        return governor;
+    }
+
+    @Test
+    public void disabledGovernorNeverIdles() {
+        FrameRateGovernor governor = governor(0);
+        assertFalse(governor.isEnabled());
+        for (long t = 1; t < 10; t++)
+            governor.onFrame(signature(50), t * 1000 * MS);
+        assertFalse(governor.isIdle());
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void staticSceneGoesIdleAfterTimeout() {
+        FrameRateGovernor governor = governor(1000);
+        governor.onFrame(signature(50), 1 * MS);
+        governor.onFrame(signature(50), 1000 * MS);
+        assertFalse(governor.isIdle());
+        governor.onFrame(signature(50), 1002 * MS);
+        assertTrue(governor.isIdle());
+        assertEquals(Arrays.asList(true), changes);
+    }
+
+    @Test
+    public void sceneChangeWakesUp() {
+        FrameRateGovernor governor = governor(1000);
+        governor.onFrame(signature(50), 1 * MS);
+        governor.onFrame(signature(50), 2000 * MS);
+        assertTrue(governor.isIdle());
+
+        governor.onFrame(signature(70), 2100 * MS);
+        assertFalse(governor.isIdle());
+        assertEquals(Arrays.asList(true, false), changes);
+        assertEquals(2, governor.getIdleTransitions());
+    }
+
+    @Test
+    public void smallChangesDoNotWakeUp() {
+        FrameRateGovernor governor = governor(1000);
+        governor.onFrame(signature(50), 1 * MS);
+        governor.onFrame(signature(50), 2000 * MS);
+        governor.onFrame(signature(55), 2100 * MS);
+        assertTrue(governor.isIdle());
+    }
+
+    @Test
+    public void slowDriftAddsUp() {
+        FrameRateGovernor governor = governor(1000);
+        governor.onFrame(signature(50), 1 * MS);
+        governor.onFrame(signature(50), 2000 * MS);
+        // each step is below the threshold, but the reference stays at 50
+        for (int luma = 52; luma <= 58; luma += 2) {
+            governor.onFrame(signature(luma), 2000 * MS + luma * MS);
+            assertTrue(governor.isIdle());
+        }
+        governor.onFrame(signature(60), 2100 * MS);
+        assertFalse(governor.isIdle());
+    }
+
+    @Test
+    public void activityDelaysIdle() {
+        FrameRateGovernor governor = governor(1000);
+        governor.onFrame(signature(50), 1 * MS);
+        governor.onActivity(800 * MS);
+        governor.onFrame(signature(50), 1500 * MS);
+        assertFalse(governor.isIdle());
+        governor.onFrame(signature(50), 1801 * MS);
+        assertTrue(governor.isIdle());
+
+        governor.onActivity(1900 * MS);
+        assertFalse(governor.isIdle());
+    }
+
+    @Test
+    public void disablingWakesUp() {
+        FrameRateGovernor governor = governor(1000);
+        governor.onFrame(signature(50), 1 * MS);
+        governor.onFrame(signature(50), 2000 * MS);
+        governor.setIdleTimeoutMillis(0);
+        assertFalse(governor.isIdle());
+        assertEquals(Arrays.asList(true, false), changes);
+    }
+}
@@ -0,0 +1,94 @@
+package com.sunmi.scanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValuesHaveBucketsOfTheirOwn() {
+        for (int micros = 0; micros < 4; micros++) {
+            assertEquals(micros, LatencyHistogram.bucketOf(micros));
+            assertEquals(micros, LatencyHistogram.upperBound(micros));
+        }
+    }
+
+    @Test
+    public void bucketBoundsContainValueWithinQuarter() {
+        for (long micros = 0; micros < 1 << 20; micros++) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            long upper = LatencyHistogram.upperBound(bucket);
+            long lower = bucket == 0 ? 0 : LatencyHistogram.upperBound(bucket - 1) + 1;
+            assertTrue(micros + " above bucket " + bucket, micros <= upper);
+            assertTrue(micros + " below bucket " + bucket, micros >= lower);
+            assertTrue(micros + " reported as " + upper, upper - micros <= micros / 4);
+        }
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+        for (int bucket = 1; bucket < 120; bucket++) {
+            long lower = LatencyHistogram.upperBound(bucket - 1) + 1;
+            assertEquals(bucket, LatencyHistogram.bucketOf(lower));
+            assertEquals(bucket, LatencyHistogram.bucketOf(LatencyHistogram.upperBound(bucket)));
+        }
+    }
+
+    @Test
+    public void hugeValuesLandInLastBucket() {
+        assertEquals(119, LatencyHistogram.bucketOf(Long.MAX_VALUE / 1000));
+    }
+
+    @Test
+    public void percentilesOfUniformSamples() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 1000; micros++)
+            histogram.record(micros * 1000L);
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500, histogram.getMeanMicros());
+        assertPercentile(histogram, 50, 500);
+        assertPercentile(histogram, 95, 950);
+        assertPercentile(histogram, 99, 990);
+        assertPercentile(histogram, 100, 1000);
+    }
+
+    @Test
+    public void percentileOfSingleSample() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(2_000);
+        assertEquals(2, histogram.getPercentileMicros(1));
+        assertEquals(2, histogram.getPercentileMicros(99));
+    }
+
+    @Test
+    public void emptyAndResetHistogramsReportZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileMicros(50));
+        assertEquals(0, histogram.getMeanMicros());
+
+        histogram.record(5_000_000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMicros(99));
+        assertEquals(0, histogram.getMeanMicros());
+    }
+
+    @Test
+    public void negativeSamplesCountAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5_000);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMicros(50));
+    }
+
+    /**
+     * The percentile is the upper bound of the bucket holding the exact value.
+     */
+    private static void assertPercentile(LatencyHistogram histogram, double percentile, long exact) {
+        long reported = histogram.getPercentileMicros(percentile);
+        assertEquals(LatencyHistogram.upperBound(LatencyHistogram.bucketOf(exact)), reported);
+    }
+}
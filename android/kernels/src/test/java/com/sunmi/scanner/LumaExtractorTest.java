@@ -0,0 +1,85 @@
+package com.sunmi.scanner;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class LumaExtractorTest {
+
+    /**
+     * A plane of the given layout whose pixel (x, y) holds x + 16 * y, with every
+     * padding byte set to -1 so reading one shows up in the output.
+     */
+    private static ByteBuffer plane(int width, int height, int rowStride, int pixelStride, int offset) {
+        byte[] bytes = new byte[offset + (height - 1) * rowStride + (width - 1) * pixelStride + 1];
+        Arrays.fill(bytes, (byte) -1);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++)
+                bytes[offset + y * rowStride + x * pixelStride] = value(x, y);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.position(offset);
+        return buffer;
+    }
+
+    private static byte value(int x, int y) {
+        return (byte) (x + 16 * y);
+    }
+
+    private static byte[] expected(int left, int top, int width, int height) {
+        byte[] window = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++)
+                window[y * width + x] = value(left + x, top + y);
+        }
+        return window;
+    }
+
+    @Test
+    public void copiesPackedPlane() {
+        ByteBuffer plane = plane(12, 8, 12, 1, 0);
+        byte[] dst = new byte[12 * 8];
+        LumaExtractor.extract(plane, 12, 1, 0, 0, 12, 8, dst);
+        assertArrayEquals(expected(0, 0, 12, 8), dst);
+    }
+
+    @Test
+    public void skipsRowPadding() {
+        ByteBuffer plane = plane(12, 8, 16, 1, 0);
+        byte[] dst = new byte[12 * 8];
+        LumaExtractor.extract(plane, 16, 1, 0, 0, 12, 8, dst);
+        assertArrayEquals(expected(0, 0, 12, 8), dst);
+    }
+
+    @Test
+    public void copiesWindowOfPaddedPlane() {
+        ByteBuffer plane = plane(12, 8, 16, 1, 0);
+        byte[] dst = new byte[6 * 4];
+        LumaExtractor.extract(plane, 16, 1, 3, 2, 6, 4, dst);
+        assertArrayEquals(expected(3, 2, 6, 4), dst);
+    }
+
+    @Test
+    public void honoursPixelStride() {
+        ByteBuffer plane = plane(12, 8, 28, 2, 0);
+        byte[] dst = new byte[5 * 3];
+        LumaExtractor.extract(plane, 28, 2, 4, 1, 5, 3, dst);
+        assertArrayEquals(expected(4, 1, 5, 3), dst);
+    }
+
+    @Test
+    public void readsFromBufferPositionAndRestoresIt() {
+        for (int pixelStride = 1; pixelStride <= 2; pixelStride++) {
+            int rowStride = 12 * pixelStride + 4;
+            ByteBuffer plane = plane(12, 8, rowStride, pixelStride, 7);
+            byte[] dst = new byte[10 * 6];
+            LumaExtractor.extract(plane, rowStride, pixelStride, 1, 1, 10, 6, dst);
+            assertArrayEquals(expected(1, 1, 10, 6), dst);
+            assertEquals(7, plane.position());
+        }
+    }
+}
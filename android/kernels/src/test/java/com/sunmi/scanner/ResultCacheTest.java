@@ -0,0 +1,108 @@
+package com.sunmi.scanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResultCacheTest {
+    private static final long MS = 1000000L;
+
+    private static ResultCache cache(int capacity, String eviction) {
+        ResultCache cache = new ResultCache();
+        cache.setWindowMillis(1000);
+        cache.setCapacity(capacity);
+        cache.setEviction(eviction);
+        return cache;
+    }
+
+    @Test
+    public void disabledWithoutWindow() {
+        ResultCache cache = new ResultCache();
+        assertFalse(cache.isEnabled());
+        assertFalse(cache.isDuplicate("QR-Code", "a", 1));
+        assertFalse(cache.isDuplicate("QR-Code", "a", 2));
+        assertEquals(0, cache.getSuppressedCount());
+    }
+
+    @Test
+    public void repeatWithinWindowIsDuplicate() {
+        ResultCache cache = cache(8, ResultCache.EVICTION_LRU);
+        assertFalse(cache.isDuplicate("QR-Code", "a", 100 * MS));
+        assertTrue(cache.isDuplicate("QR-Code", "a", 600 * MS));
+        assertEquals(1, cache.getSuppressedCount());
+    }
+
+    @Test
+    public void windowCountsFromLastEmission() {
+        ResultCache cache = cache(8, ResultCache.EVICTION_LRU);
+        assertFalse(cache.isDuplicate("QR-Code", "a", 100 * MS));
+        // suppressed repeats do not extend the window
+        assertTrue(cache.isDuplicate("QR-Code", "a", 1099 * MS));
+        assertFalse(cache.isDuplicate("QR-Code", "a", 1100 * MS));
+        assertTrue(cache.isDuplicate("QR-Code", "a", 2000 * MS));
+        assertFalse(cache.isDuplicate("QR-Code", "a", 2100 * MS));
+    }
+
+    @Test
+    public void symbologyIsPartOfKey() {
+        ResultCache cache = cache(8, ResultCache.EVICTION_LRU);
+        assertFalse(cache.isDuplicate("QR-Code", "123", 0));
+        assertFalse(cache.isDuplicate("EAN-13", "123", 0));
+        assertTrue(cache.isDuplicate("EAN-13", "123", 0));
+    }
+
+    @Test
+    public void lruEvictsLeastRecentlyLookedUp() {
+        ResultCache cache = cache(2, ResultCache.EVICTION_LRU);
+        cache.isDuplicate("QR-Code", "a", 0);
+        cache.isDuplicate("QR-Code", "b", 0);
+        // seeing a again makes b the least recently used
+        assertTrue(cache.isDuplicate("QR-Code", "a", MS));
+        cache.isDuplicate("QR-Code", "c", 2 * MS);
+
+        assertTrue(cache.isDuplicate("QR-Code", "a", 3 * MS));
+        assertFalse(cache.isDuplicate("QR-Code", "b", 3 * MS));
+    }
+
+    @Test
+    public void fifoEvictsOldestInserted() {
+        ResultCache cache = cache(2, ResultCache.EVICTION_FIFO);
+        cache.isDuplicate("QR-Code", "a", 0);
+        cache.isDuplicate("QR-Code", "b", 0);
+        // lookups do not reorder, so a is still the oldest
+        assertTrue(cache.isDuplicate("QR-Code", "a", MS));
+        cache.isDuplicate("QR-Code", "c", 2 * MS);
+
+        assertFalse(cache.isDuplicate("QR-Code", "a", 3 * MS));
+        assertTrue(cache.isDuplicate("QR-Code", "c", 3 * MS));
+    }
+
+    @Test
+    public void shrinkingCapacityEvicts() {
+        ResultCache cache = cache(4, ResultCache.EVICTION_FIFO);
+        for (String result : new String[]{"a", "b", "c", "d"})
+            cache.isDuplicate("QR-Code", result, 0);
+        cache.setCapacity(1);
+
+        assertTrue(cache.isDuplicate("QR-Code", "d", MS));
+        assertFalse(cache.isDuplicate("QR-Code", "a", MS));
+    }
+
+    @Test
+    public void switchingEvictionKeepsEntries() {
+        ResultCache cache = cache(4, ResultCache.EVICTION_LRU);
+        cache.isDuplicate("QR-Code", "a", 0);
+        cache.setEviction(ResultCache.EVICTION_FIFO);
+        assertTrue(cache.isDuplicate("QR-Code", "a", MS));
+    }
+
+    @Test
+    public void clearForgetsEmissions() {
+        ResultCache cache = cache(4, ResultCache.EVICTION_LRU);
+        cache.isDuplicate("QR-Code", "a", 0);
+        cache.clear();
+        assertFalse(cache.isDuplicate("QR-Code", "a", MS));
+    }
+}
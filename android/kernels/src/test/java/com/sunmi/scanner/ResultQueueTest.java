@@ -0,0 +1,138 @@
+package com.sunmi.scanner;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResultQueueTest {
+
+    private static ResultQueue<String> queue(int capacity, String overflow) {
+        ResultQueue<String> queue = new ResultQueue<>();
+        queue.setCapacity(capacity);
+        queue.setOverflow(overflow);
+        return queue;
+    }
+
+    @Test
+    public void nextBatchWaitsForAcknowledgement() {
+        ResultQueue<String> queue = queue(4, ResultQueue.OVERFLOW_DROP_OLDEST);
+        queue.offer("a", "a");
+        queue.offer("b", "b");
+        assertEquals(Arrays.asList("a", "b"), queue.takeBatch());
+        long batchId = queue.getBatchId();
+        assertTrue(queue.isAwaitingAck());
+
+        queue.offer("c", "c");
+        assertNull(queue.takeBatch());
+        assertTrue(queue.acknowledge(batchId));
+        assertEquals(Arrays.asList("c"), queue.takeBatch());
+        assertEquals(batchId + 1, queue.getBatchId());
+    }
+
+    @Test
+    public void staleAcknowledgementIsIgnored() {
+        ResultQueue<String> queue = queue(4, ResultQueue.OVERFLOW_DROP_OLDEST);
+        queue.offer("a", "a");
+        queue.takeBatch();
+        long batchId = queue.getBatchId();
+
+        queue.offer("b", "b");
+        assertFalse(queue.acknowledge(batchId - 1));
+        assertTrue(queue.isAwaitingAck());
+        assertTrue(queue.acknowledge(batchId));
+        // repeating the acknowledgement changes nothing
+        queue.takeBatch();
+        assertFalse(queue.acknowledge(batchId));
+        assertTrue(queue.isAwaitingAck());
+    }
+
+    @Test
+    public void emptyQueueGivesNoBatch() {
+        ResultQueue<String> queue = queue(4, ResultQueue.OVERFLOW_DROP_OLDEST);
+        assertNull(queue.takeBatch());
+        assertFalse(queue.isAwaitingAck());
+    }
+
+    @Test
+    public void unboundedQueueNeedsNoAcknowledgement() {
+        ResultQueue<String> queue = queue(0, ResultQueue.OVERFLOW_DROP_NEWEST);
+        for (int i = 0; i < 100; i++)
+            assertTrue(queue.offer("k" + i, "v" + i));
+        assertEquals(100, queue.takeBatch().size());
+        assertFalse(queue.isAwaitingAck());
+        queue.offer("x", "x");
+        assertEquals(Arrays.asList("x"), queue.takeBatch());
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test
+    public void dropOldestKeepsNewest() {
+        ResultQueue<String> queue = queue(2, ResultQueue.OVERFLOW_DROP_OLDEST);
+        assertTrue(queue.offer("a", "a"));
+        assertTrue(queue.offer("b", "b"));
+        assertTrue(queue.offer("c", "c"));
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(Arrays.asList("b", "c"), queue.takeBatch());
+    }
+
+    @Test
+    public void dropNewestKeepsOldest() {
+        ResultQueue<String> queue = queue(2, ResultQueue.OVERFLOW_DROP_NEWEST);
+        assertTrue(queue.offer("a", "a"));
+        assertTrue(queue.offer("b", "b"));
+        assertFalse(queue.offer("c", "c"));
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(Arrays.asList("a", "b"), queue.takeBatch());
+    }
+
+    @Test
+    public void mergeReplacesQueuedResultWithSameKey() {
+        ResultQueue<String> queue = queue(2, ResultQueue.OVERFLOW_MERGE);
+        queue.offer("qr", "frame 1");
+        queue.offer("ean", "frame 2");
+        assertTrue(queue.offer("qr", "frame 3"));
+        assertEquals(1, queue.getMergedCount());
+        assertEquals(0, queue.getDroppedCount());
+        assertEquals(Arrays.asList("frame 3", "frame 2"), queue.takeBatch());
+    }
+
+    @Test
+    public void mergeWithoutMatchDropsOldest() {
+        ResultQueue<String> queue = queue(2, ResultQueue.OVERFLOW_MERGE);
+        queue.offer("qr", "frame 1");
+        queue.offer("ean", "frame 2");
+        queue.offer("code128", "frame 3");
+        assertEquals(0, queue.getMergedCount());
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(Arrays.asList("frame 2", "frame 3"), queue.takeBatch());
+    }
+
+    @Test
+    public void shrinkingCapacityDropsOldest() {
+        ResultQueue<String> queue = queue(4, ResultQueue.OVERFLOW_DROP_OLDEST);
+        for (String value : new String[]{"a", "b", "c", "d"})
+            queue.offer(value, value);
+        queue.setCapacity(2);
+        assertEquals(2, queue.getDepth());
+        assertEquals(2, queue.getDroppedCount());
+        assertEquals(Arrays.asList("c", "d"), queue.takeBatch());
+    }
+
+    @Test
+    public void clearEndsWaitForAcknowledgement() {
+        ResultQueue<String> queue = queue(4, ResultQueue.OVERFLOW_DROP_OLDEST);
+        queue.offer("a", "a");
+        queue.takeBatch();
+        queue.offer("b", "b");
+        queue.clear();
+        assertFalse(queue.isAwaitingAck());
+        assertEquals(0, queue.getDepth());
+        queue.offer("c", "c");
+        assertEquals(Arrays.asList("c"), queue.takeBatch());
+    }
+}
@@ -0,0 +1,134 @@
+package com.sunmi.scanner;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ScanPipelineTest {
+
+    /**
+     * Records the worker count of every decoder created and the frames they decode.
+     */
+    private static class RecordingFactory implements ScanPipeline.DecoderFactory {
+        final List<Integer> created = new ArrayList<>();
+        final List<int[]> decoded = new ArrayList<>();
+
+        @Override
+        public synchronized DecodeExecutor.Decoder create(final int workers) {
+            created.add(workers);
+            return new DecodeExecutor.Decoder() {
+                @Override
+                public boolean decode(FramePool.Frame frame, int worker) {
+                    synchronized (RecordingFactory.this) {
+                        decoded.add(new int[]{workers, worker, frame.width, frame.height});
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized List<int[]> getDecoded() {
+            return new ArrayList<>(decoded);
+        }
+    }
+
+    private ScanPipeline pipeline;
+
+    @After
+    public void shutDown() {
+        if (pipeline != null)
+            pipeline.getDecodeExecutor().shutdown();
+    }
+
+    private static void awaitIdle(DecodeExecutor executor) throws InterruptedException {
+        for (int i = 0; i < 200 && !executor.isIdle(); i++)
+            Thread.sleep(10);
+    }
+
+    private static void deliver(ScanPipeline pipeline, int width, int height) {
+        pipeline.onFrame(ByteBuffer.allocate(width * height), width, 1, width, height, System.nanoTime());
+    }
+
+    @Test
+    public void startsWithOneWorker() {
+        RecordingFactory factory = new RecordingFactory();
+        pipeline = new ScanPipeline("test", factory);
+        assertEquals(1, pipeline.getDecodeExecutor().getWorkerCount());
+        assertEquals(1, (int) factory.created.get(0));
+    }
+
+    @Test
+    public void setWorkersReplacesExecutorAndShutsDownOldOne() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        RecordingFactory factory = new RecordingFactory();
+        pipeline = new ScanPipeline("test", factory);
+        DecodeExecutor previous = pipeline.getDecodeExecutor();
+
+        pipeline.setWorkers(2);
+        DecodeExecutor executor = pipeline.getDecodeExecutor();
+        if (cores == 1) {
+            // capped at one worker, nothing to replace
+            assertSame(previous, executor);
+            return;
+        }
+        assertNotSame(previous, executor);
+        assertEquals(2, executor.getWorkerCount());
+        assertEquals(2, executor.getFramePool().getSize() - 2);
+        assertEquals(2, (int) factory.created.get(1));
+
+        // the old executor hands frames straight back
+        FramePool.Frame frame = previous.getFramePool().acquire();
+        assertTrue(previous.offer(frame));
+        assertEquals(0, previous.getOfferedCount());
+    }
+
+    @Test
+    public void setWorkersWithSameCountKeepsExecutor() {
+        RecordingFactory factory = new RecordingFactory();
+        pipeline = new ScanPipeline("test", factory);
+        DecodeExecutor executor = pipeline.getDecodeExecutor();
+        pipeline.setWorkers(1);
+        pipeline.setWorkers(0);
+        assertSame(executor, pipeline.getDecodeExecutor());
+        assertEquals(1, factory.created.size());
+    }
+
+    @Test
+    public void setWorkersIsCappedAtAvailableCores() {
+        pipeline = new ScanPipeline("test", new RecordingFactory());
+        pipeline.setWorkers(1000);
+        assertEquals(Runtime.getRuntime().availableProcessors(), pipeline.getDecodeExecutor().getWorkerCount());
+    }
+
+    @Test
+    public void newExecutorKeepsIntervalAndFrameSize() throws InterruptedException {
+        RecordingFactory factory = new RecordingFactory();
+        pipeline = new ScanPipeline("test", factory);
+        pipeline.configure(64, 48);
+        pipeline.setScanInterval(60000);
+        pipeline.setWorkers(2);
+        int workers = pipeline.getDecodeExecutor().getWorkerCount();
+
+        deliver(pipeline, 64, 48);
+        awaitIdle(pipeline.getDecodeExecutor());
+        // the interval carried over, so the second frame is skipped
+        deliver(pipeline, 64, 48);
+        awaitIdle(pipeline.getDecodeExecutor());
+
+        // the frame was copied, so the new pool was sized for the analysis stream
+        List<int[]> decoded = factory.getDecoded();
+        assertEquals(1, decoded.size());
+        assertEquals(workers, decoded.get(0)[0]);
+        assertEquals(64, decoded.get(0)[2]);
+        assertEquals(48, decoded.get(0)[3]);
+        assertEquals(1, pipeline.getDecodeExecutor().getSkippedCount());
+    }
+}
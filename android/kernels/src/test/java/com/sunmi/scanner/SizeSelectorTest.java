@@ -0,0 +1,85 @@
+package com.sunmi.scanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SizeSelectorTest {
+    private static final int[] WIDTHS = {1920, 1280, 640, 1440, 960, 320, 4000};
+    private static final int[] HEIGHTS = {1080, 720, 480, 1080, 720, 240, 3000};
+
+    @Test
+    public void compareByAreaOrdersByPixelCount() {
+        assertEquals(-1, SizeSelector.compareByArea(640, 480, 1280, 720));
+        assertEquals(1, SizeSelector.compareByArea(1280, 720, 640, 480));
+        // same area, different shape
+        assertEquals(0, SizeSelector.compareByArea(800, 600, 600, 800));
+    }
+
+    @Test
+    public void compareByAreaDoesNotOverflow() {
+        assertEquals(1, SizeSelector.compareByArea(100000, 100000, 1, 1));
+        assertEquals(-1, SizeSelector.compareByArea(46341, 46341, 65536, 65536));
+    }
+
+    @Test
+    public void optimalSizeIsSmallestBigEnoughWithSameAspect() {
+        int[] widths = {1920, 1280, 640, 1440};
+        int[] heights = {1080, 720, 360, 1080};
+        assertEquals(1, SizeSelector.chooseOptimalSize(widths, heights, 1280, 720));
+    }
+
+    @Test
+    public void optimalSizeFallsBackToLargestSmaller() {
+        int[] widths = {640, 960, 1024};
+        int[] heights = {360, 540, 768};
+        assertEquals(1, SizeSelector.chooseOptimalSize(widths, heights, 1280, 720));
+    }
+
+    @Test
+    public void noOptimalSize() {
+        int[] widths = {1024, 4000};
+        int[] heights = {768, 3000};
+        assertEquals(-1, SizeSelector.chooseOptimalSize(widths, heights, 1280, 720));
+    }
+
+    @Test
+    public void analysisSizeIsLargestWithinBudgetSharingAspect() {
+        // 4:3 within 1280x960 pixels: 960x720, not the larger 1440x1080 or the 16:9 ones
+        assertEquals(4, SizeSelector.chooseAnalysisSize(WIDTHS, HEIGHTS, 1280 * 960, 4, 3));
+        assertEquals(1, SizeSelector.chooseAnalysisSize(WIDTHS, HEIGHTS, 1280 * 720, 16, 9));
+        assertEquals(0, SizeSelector.chooseAnalysisSize(WIDTHS, HEIGHTS, Long.MAX_VALUE, 16, 9));
+    }
+
+    @Test
+    public void analysisSizeFallsBackToSmallestSharingAspect() {
+        assertEquals(5, SizeSelector.chooseAnalysisSize(WIDTHS, HEIGHTS, 1000, 4, 3));
+    }
+
+    @Test
+    public void analysisSizeIgnoresAspectWhenNothingSharesIt() {
+        // no 21:9 size, so the largest within budget of any shape
+        assertEquals(4, SizeSelector.chooseAnalysisSize(WIDTHS, HEIGHTS, 700000, 21, 9));
+        assertEquals(4, SizeSelector.chooseAnalysisSize(WIDTHS, HEIGHTS, 700000, 0, 0));
+    }
+
+    @Test
+    public void matchingAreasAreDistinctAndAscending() {
+        int[] widths = {1920, 640, 1280, 1920, 800, 640};
+        int[] heights = {1080, 360, 720, 1080, 600, 480};
+        assertArrayEquals(new long[]{640 * 360, 1280 * 720, 1920 * 1080},
+                SizeSelector.matchingAreas(widths, heights, 16, 9));
+        assertArrayEquals(new long[0], SizeSelector.matchingAreas(widths, heights, 21, 9));
+    }
+
+    @Test
+    public void aspectToleratesOnePercent() {
+        assertTrue(SizeSelector.sameAspect(1920, 1080, 16, 9));
+        // 1920x1088 is a common aligned stream size
+        assertTrue(SizeSelector.sameAspect(1920, 1088, 16, 9));
+        assertFalse(SizeSelector.sameAspect(1440, 1080, 16, 9));
+    }
+}
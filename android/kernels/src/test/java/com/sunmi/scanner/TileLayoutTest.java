@@ -0,0 +1,96 @@
+package com.sunmi.scanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TileLayoutTest {
+
+    @Test
+    public void noTileSizeGivesWholeFrame() {
+        assertArrayEquals(new int[]{0, 0, 640, 480}, TileLayout.compute(640, 480, 0, 64));
+    }
+
+    @Test
+    public void tileLargerThanFrameIsClipped() {
+        assertArrayEquals(new int[]{0, 0, 640, 480}, TileLayout.compute(640, 480, 1000, 64));
+    }
+
+    @Test
+    public void tilesStayInsideFrameAndCoverIt() {
+        int width = 1280;
+        int height = 720;
+        int[] rects = TileLayout.compute(width, height, 256, 64);
+        boolean[] covered = new boolean[width * height];
+        for (int i = 0; i < rects.length; i += 4) {
+            int left = rects[i], top = rects[i + 1], w = rects[i + 2], h = rects[i + 3];
+            assertEquals(256, w);
+            assertEquals(256, h);
+            assertTrue(left >= 0 && top >= 0 && left + w <= width && top + h <= height);
+            for (int y = top; y < top + h; y++) {
+                for (int x = left; x < left + w; x++)
+                    covered[y * width + x] = true;
+            }
+        }
+        for (int i = 0; i < covered.length; i++) {
+            if (!covered[i])
+                fail("pixel " + i % width + "," + i / width + " not covered");
+        }
+    }
+
+    @Test
+    public void lastTilesAlignWithFrameEdge() {
+        int[] rects = TileLayout.compute(1000, 700, 300, 50);
+        int maxRight = 0;
+        int maxBottom = 0;
+        for (int i = 0; i < rects.length; i += 4) {
+            maxRight = Math.max(maxRight, rects[i] + rects[i + 2]);
+            maxBottom = Math.max(maxBottom, rects[i + 1] + rects[i + 3]);
+        }
+        assertEquals(1000, maxRight);
+        assertEquals(700, maxBottom);
+    }
+
+    @Test
+    public void everyCodeUpToOverlapIsWholeInSomeTile() {
+        int width = 300;
+        int height = 200;
+        int tileSize = 100;
+        int overlap = 30;
+        int[] rects = TileLayout.compute(width, height, tileSize, overlap);
+        for (int y = 0; y + overlap <= height; y++) {
+            for (int x = 0; x + overlap <= width; x++) {
+                boolean whole = false;
+                for (int i = 0; i < rects.length && !whole; i += 4) {
+                    whole = x >= rects[i] && y >= rects[i + 1]
+                            && x + overlap <= rects[i] + rects[i + 2]
+                            && y + overlap <= rects[i + 1] + rects[i + 3];
+                }
+                if (!whole)
+                    fail("code at " + x + "," + y + " is cut by every tile");
+            }
+        }
+    }
+
+    @Test
+    public void neighboursShareOverlap() {
+        int[] rects = TileLayout.compute(1000, 100, 100, 20);
+        // a single row of tiles, each starting 80 pixels after the previous one but the last
+        for (int i = 4; i < rects.length - 4; i += 4)
+            assertEquals(80, rects[i] - rects[i - 4]);
+        assertEquals(900, rects[rects.length - 4]);
+    }
+
+    @Test
+    public void overlapIsCappedAtHalfTile() {
+        // an overlap of the whole tile used to advance by a single pixel
+        int[] rects = TileLayout.compute(1280, 720, 64, 64);
+        assertEquals(0, rects[0]);
+        assertEquals(32, rects[4]);
+        // 39 columns by 22 rows at a step of 32, the last ones aligned with the edge
+        assertEquals(39 * 22 * 4, rects.length);
+    }
+}
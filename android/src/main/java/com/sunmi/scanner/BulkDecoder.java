@@ -0,0 +1,226 @@
+package com.sunmi.scanner;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import com.facebook.react.bridge.*;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.sunmi.scan.Config;
+import com.sunmi.scan.Image;
+import com.sunmi.scan.Symbol;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes barcodes from stored images without a camera.
+ *
+ * A fixed number of workers pull images off a shared index, each with its own
+ * ImageScanner and reusable luma buffer. Images are downsampled while decoding to at
+ * most the pixel budget and only their luma reaches the scanner, so memory depends
+ * on the number of workers and not on the number of images. Each image is reported
+ * as soon as it is done.
+ *
+ * Workers of all decoders run on one shared pool with a thread per core, so
+ * concurrent calls queue up behind each other instead of adding threads.
+ */
+public class BulkDecoder {
+    private static final String TAG = "BulkDecoder";
+    public static final String EVENT_RESULT = "SunmiScannerBulkResult";
+
+    private static final ThreadPoolExecutor executor = createExecutor();
+
+    private final ReactApplicationContext context;
+    private final List<String> sources;
+    private final ScannerConfig config;
+    private final int batchId;
+    private final long pixelBudget;
+    private final Promise promise;
+
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger decoded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /**
+     * @param sources     content:// or file:// URIs, or plain file paths
+     * @param pixelBudget images larger than this are downsampled by powers of two, 0 or
+     *                    less keeps them at full size
+     */
+    public BulkDecoder(ReactApplicationContext context, List<String> sources, ScannerConfig config,
+                       int batchId, long pixelBudget, Promise promise) {
+        this.context = context;
+        this.sources = sources;
+        this.config = config;
+        this.batchId = batchId;
+        this.pixelBudget = pixelBudget > 0 ? pixelBudget : Long.MAX_VALUE;
+        this.promise = promise;
+    }
+
+    public void start(int workers) {
+        workers = Math.max(1, Math.min(Math.min(workers, Runtime.getRuntime().availableProcessors()), sources.size()));
+        if (sources.isEmpty()) {
+            finish();
+            return;
+        }
+
+        running.set(workers);
+        for (int i = 0; i < workers; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            });
+        }
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 5, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, TAG + " " + count.getAndIncrement());
+            }
+        });
+        // no threads are kept while no images are being decoded
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private void work() {
+        ConfiguredScanner scanner = new ConfiguredScanner(config);
+        Image image = new Image(0, 0, "Y800");
+        // grown to the largest image this worker sees, then reused
+        byte[] luma = new byte[0];
+        int[] row = new int[0];
+        try {
+            int index;
+            while ((index = next.getAndIncrement()) < sources.size()) {
+                String source = sources.get(index);
+                WritableMap event = new WritableNativeMap();
+                event.putInt("batchId", batchId);
+                event.putInt("index", index);
+                event.putString("uri", source);
+                try {
+                    Bitmap bitmap = load(source);
+                    if (bitmap == null)
+                        throw new IOException("Cannot decode image");
+                    int width = bitmap.getWidth();
+                    int height = bitmap.getHeight();
+                    if (luma.length < width * height)
+                        luma = new byte[width * height];
+                    if (row.length < width)
+                        row = new int[width];
+                    toLuma(bitmap, row, luma);
+                    bitmap.recycle();
+
+                    image.setSize(width, height);
+                    image.setCrop(0, 0, width, height);
+                    image.setData(luma);
+                    WritableArray codes = new WritableNativeArray();
+                    if (scanner.scanImage(image) != 0) {
+                        for (Symbol sym : scanner.getResults()) {
+                            WritableMap r = new WritableNativeMap();
+                            r.putString("symbolName", sym.getSymbolName());
+                            r.putString("result", sym.getResult());
+                            codes.pushMap(r);
+                        }
+                        decoded.incrementAndGet();
+                    }
+                    event.putArray("result", codes);
+                } catch (Exception | OutOfMemoryError e) {
+                    Log.w(TAG, "Failed to decode " + source, e);
+                    failed.incrementAndGet();
+                    event.putString("error", e.toString());
+                }
+                context.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit(EVENT_RESULT, event);
+            }
+        } finally {
+            scanner.destroy();
+            if (running.decrementAndGet() == 0)
+                finish();
+        }
+    }
+
+    private void finish() {
+        WritableMap summary = new WritableNativeMap();
+        summary.putInt("batchId", batchId);
+        summary.putInt("images", sources.size());
+        summary.putInt("decoded", decoded.get());
+        summary.putInt("failed", failed.get());
+        promise.resolve(summary);
+    }
+
+    private Bitmap load(String source) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = open(source)) {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            return null;
+
+        int sampleSize = 1;
+        while ((long) (options.outWidth / sampleSize) * (options.outHeight / sampleSize) > pixelBudget)
+            sampleSize *= 2;
+        options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        // half the memory of ARGB_8888, and colour is dropped right after anyway
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        try (InputStream in = open(source)) {
+            return BitmapFactory.decodeStream(in, null, options);
+        }
+    }
+
+    private InputStream open(String source) throws IOException {
+        if (source.startsWith("/"))
+            return new FileInputStream(source);
+        InputStream in = context.getContentResolver().openInputStream(Uri.parse(source));
+        if (in == null)
+            throw new IOException("Cannot open " + source);
+        return in;
+    }
+
+    /**
+     * Rec. 601 luma of the bitmap, one row at a time so no full ARGB copy is made.
+     */
+    private static void toLuma(Bitmap bitmap, int[] row, byte[] luma) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int out = 0;
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                int pixel = row[x];
+                int r = (pixel >> 16) & 0xff;
+                int g = (pixel >> 8) & 0xff;
+                int b = pixel & 0xff;
+                luma[out++] = (byte) ((77 * r + 150 * g + 29 * b) >> 8);
+            }
+        }
+    }
+
+    /**
+     * Decoder settings for still images: full density, several codes per image.
+     */
+    public static ScannerConfig defaultConfig() {
+        ScannerConfig config = new ScannerConfig();
+        config.set(0, Config.X_DENSITY, 1);
+        config.set(0, Config.Y_DENSITY, 1);
+        config.set(0, Config.ENABLE_MULTILESYMS, 1);
+        return config;
+    }
+}
@@ -0,0 +1,120 @@
+package com.sunmi.scanner;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.util.Range;
+import android.util.Size;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of the camera configuration the scanner needs.
+ *
+ * Querying CameraCharacteristics goes through the camera service and is slow on
+ * some devices, and none of it changes while the process lives, so every camera id
+ * is only looked up once. prewarm() fills the cache before the scan screen mounts.
+ */
+@TargetApi(23)
+public final class CameraInfoCache {
+
+    public static final class CameraInfo {
+        // a generic array cannot be created directly, the empty one holds no element to mistype
+        @SuppressWarnings("unchecked")
+        private static final Range<Integer>[] NO_FPS_RANGES = (Range<Integer>[]) new Range<?>[0];
+
+        public final String cameraId;
+        public final int sensorOrientation;
+        // image timestamps share the SystemClock.elapsedRealtimeNanos() time base
+        public final boolean timestampRealtime;
+        public final float minimumFocusDistance;
+        public final Size[] previewSizes;
+        public final Size[] analysisSizes;
+        // auto-exposure target frame rate ranges, may be empty
+        public final Range<Integer>[] fpsRanges;
+
+        CameraInfo(String cameraId, CameraCharacteristics characteristics) {
+            this.cameraId = cameraId;
+            Integer orientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+            sensorOrientation = orientation != null ? orientation : 0;
+            Integer timestampSource = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+            timestampRealtime = timestampSource != null
+                    && timestampSource == CameraMetadata.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+            Float focusDistance = characteristics.get(CameraCharacteristics.LENS_INFO_MINIMUM_FOCUS_DISTANCE);
+            minimumFocusDistance = focusDistance != null ? focusDistance : 0;
+            StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            previewSizes = map.getOutputSizes(ImageFormat.JPEG);
+            analysisSizes = map.getOutputSizes(ImageFormat.YUV_420_888);
+            Range<Integer>[] ranges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+            fpsRanges = ranges != null ? ranges : NO_FPS_RANGES;
+        }
+
+        /**
+         * The supported frame rate range with the lowest maximum, or null if none is listed.
+         */
+        public Range<Integer> getLowestFpsRange() {
+            Range<Integer> lowest = null;
+            for (Range<Integer> range : fpsRanges) {
+                if (lowest == null || range.getUpper() < lowest.getUpper()
+                        || (range.getUpper().equals(lowest.getUpper()) && range.getLower() < lowest.getLower()))
+                    lowest = range;
+            }
+            return lowest;
+        }
+
+        /**
+         * The range with the lowest maximum of at least the given frame rate, else the
+         * range with the highest maximum, or null if none is listed.
+         */
+        public Range<Integer> chooseFpsRange(int fps) {
+            Range<Integer> best = null;
+            Range<Integer> highest = null;
+            for (Range<Integer> range : fpsRanges) {
+                if (highest == null || range.getUpper() > highest.getUpper())
+                    highest = range;
+                if (range.getUpper() >= fps && (best == null || range.getUpper() < best.getUpper()
+                        || (range.getUpper().equals(best.getUpper()) && range.getLower() < best.getLower())))
+                    best = range;
+            }
+            return best != null ? best : highest;
+        }
+    }
+
+    private static final Map<String, CameraInfo> cameras = new HashMap<>();
+    private static String defaultCameraId;
+
+    private CameraInfoCache() {
+    }
+
+    /**
+     * The camera the scanner opens: the first one the camera service lists.
+     */
+    public static synchronized String getDefaultCameraId(CameraManager manager) throws CameraAccessException {
+        if (defaultCameraId == null)
+            defaultCameraId = manager.getCameraIdList()[0];
+        return defaultCameraId;
+    }
+
+    public static synchronized CameraInfo get(CameraManager manager, String cameraId) throws CameraAccessException {
+        CameraInfo info = cameras.get(cameraId);
+        if (info == null) {
+            info = new CameraInfo(cameraId, manager.getCameraCharacteristics(cameraId));
+            cameras.put(cameraId, info);
+        }
+        return info;
+    }
+
+    /**
+     * Resolves the configuration of the default camera, if not cached yet.
+     */
+    public static CameraInfo prewarm(Context context) throws CameraAccessException {
+        CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        return get(manager, getDefaultCameraId(manager));
+    }
+}
@@ -7,104 +7,73 @@ package com.sunmi.scanner;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.SurfaceTexture;
-import android.hardware.camera2.CameraAccessException;
-import android.hardware.camera2.CameraCaptureSession;
-import android.hardware.camera2.CameraDevice;
-import android.hardware.camera2.CameraManager;
-import android.hardware.camera2.CaptureFailure;
-import android.hardware.camera2.CaptureRequest;
-import android.hardware.camera2.CaptureResult;
-import android.hardware.camera2.TotalCaptureResult;
-import android.media.ImageReader;
-import android.os.Handler;
-import android.os.HandlerThread;
-import android.support.annotation.NonNull;
 import android.util.Log;
-import android.util.Size;
 import android.view.Surface;
 import android.view.TextureView;
 import android.view.WindowManager;
-import android.hardware.camera2.CameraCharacteristics;
-import android.hardware.camera2.params.StreamConfigurationMap;
-import android.hardware.camera2.CameraMetadata;
-import android.graphics.ImageFormat;
 import android.util.DisplayMetrics;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.List;
-import java.util.Collections;
-
+/**
+ * Shows the camera preview and feeds the analysis stream to its FrameSink.
+ *
+ * The camera itself belongs to the process-wide CameraService. This view attaches
+ * when its surface is available and holds the settings the capture request is built
+ * from while it owns the stream.
+ */
 @TargetApi(23)
-public class CameraPreview extends TextureView implements TextureView.SurfaceTextureListener {
+public class CameraPreview extends TextureView implements TextureView.SurfaceTextureListener, FrameSource {
     private static final String TAG = "CameraPreview";
 
-    private SurfaceTexture _surfaceTexture;
-    private int _surfaceTextureWidth;
-    private int _surfaceTextureHeight;
+    private final CameraService mCameraService = CameraService.getInstance();
+
+    private volatile SurfaceTexture _surfaceTexture;
+    private volatile int _surfaceTextureWidth;
+    private volatile int _surfaceTextureHeight;
 
-    private android.hardware.camera2.CameraManager mCameraManager;
-    private CameraDevice mCameraDevice;
-    private ImageReader mImageReader;
-    protected CameraCaptureSession mCameraCaptureSession;
-    protected CaptureRequest.Builder captureRequestBuilder;
-    private Size imageDimension;
-    private Handler mBackgroundHandler;
-    private HandlerThread mBackgroundThread;
-    private String mCameraId;
+    // known once the camera service configured a stream for this view
+    private volatile int mSensorOrientation;
+    // pixel budget of the analysis stream, 0 sizes it like the preview
+    private volatile long mAnalysisPixelBudget;
+    private volatile long[] mAnalysisAreas = new long[0];
 
     // by default autofocus is on
-    private boolean autoFocus = true;
-    private int focusDistance;
+    private volatile boolean autoFocus = true;
+    private volatile int focusDistance;
+    private volatile boolean flash;
     private boolean cameraRunning = false;
-
-    ////////////////////////// CALLBACKS
-
-    private ImageReader.OnImageAvailableListener mPreviewCallback;
-    private CameraCaptureSession.StateCallback mCameraCaptureSessionCallback = new CameraCaptureSession.StateCallback(){
+    // reduced frame rate while nothing is being scanned, see setIdle
+    private volatile boolean mIdle;
+    private volatile int mIdleFps = 10;
+    // not scanning, see enterStandby
+    private volatile boolean mStandby;
+    private volatile boolean mStandbyLowFps;
+    private long mStandbyTimeout;
+    private final Runnable mReleaseCamera = new Runnable() {
         @Override
-        public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
-            //The camera is already closed
-            if (null == mCameraDevice) {
-                return;
-            }
-            // When the session is ready, we start displaying the preview.
-            mCameraCaptureSession = cameraCaptureSession;
-            updatePreview();
-        }
-        @Override
-        public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
-            Log.i(TAG, "Configuration change");
-        }
-    };
-
-    private final CameraDevice.StateCallback stateCallback = new CameraDevice.StateCallback() {
-        @Override
-        public void onOpened(CameraDevice camera) {
-            mCameraDevice = camera;
-            createCameraPreview(_surfaceTexture);
-        }
-        @Override
-        public void onDisconnected(CameraDevice camera) {
-            mCameraDevice.close();
-        }
-        @Override
-        public void onError(CameraDevice camera, int error) {
-            mCameraDevice.close();
-            mCameraDevice = null;
+        public void run() {
+            Log.d(TAG, "Standby timed out, releasing camera");
+            closeCamera();
         }
     };
 
+    ////////////////////////// CALLBACKS
 
+    public interface AnalysisSizeListener {
+        /**
+         * Called on the camera background thread, before the stream delivers any frame.
+         */
+        void onAnalysisSizeChosen(int width, int height);
+    }
 
+    private volatile FrameSink mFrameSink;
+    private volatile AnalysisSizeListener mAnalysisSizeListener;
+    private volatile ScanMetrics mScanMetrics;
+    private volatile ScanTimeline mScanTimeline;
 
-    public CameraPreview(Context context, ImageReader.OnImageAvailableListener previewCallback) {
+    public CameraPreview(Context context) {
         super(context);
         this.setSurfaceTextureListener(this);
 
-        mPreviewCallback = previewCallback;
-
         WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
         if (windowManager != null) {
             DisplayMetrics displayMetrics = new DisplayMetrics();
@@ -112,138 +81,176 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
         }
     }
 
-    public void openCamera() {
-        if (cameraRunning)
-            return;
+    @Override
+    public void setFrameSink(FrameSink sink) {
+        mFrameSink = sink;
+    }
 
-        mCameraManager = (android.hardware.camera2.CameraManager) getContext().getSystemService(Context.CAMERA_SERVICE);
+    public void setAnalysisSizeListener(AnalysisSizeListener listener) {
+        mAnalysisSizeListener = listener;
+    }
 
-        try {
-            mCameraId = mCameraManager.getCameraIdList()[0];
-            CameraCharacteristics characteristics = mCameraManager.getCameraCharacteristics(mCameraId);
-            StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+    public void setScanMetrics(ScanMetrics scanMetrics) {
+        mScanMetrics = scanMetrics;
+    }
 
-            imageDimension = chooseOptimalSize(map.getOutputSizes(ImageFormat.JPEG), _surfaceTextureWidth, _surfaceTextureHeight);
+    public void setScanTimeline(ScanTimeline scanTimeline) {
+        mScanTimeline = scanTimeline;
+    }
 
-            Log.d(TAG, "Used size: " + imageDimension.getWidth() + "x" + imageDimension.getHeight());
+    /**
+     * Attaches to the shared camera, taking over its stream if another preview has it.
+     */
+    public void openCamera() {
+        if (cameraRunning)
+            return;
 
+        ScanTimeline scanTimeline = mScanTimeline;
+        ScanTrace.milestone(scanTimeline, ScanTimeline.OPEN_CAMERA);
+        ScanTrace.begin("SunmiScanner openCamera");
+        try {
+            // the camera characteristics are looked up on the camera thread, see onStreamConfigured
             requestLayout();
-            startBackgroundThread();
-            mCameraManager.openCamera(mCameraId, stateCallback, null);
-
             cameraRunning = true;
+            // an inactive view keeps the camera warm without taking the stream
+            if (mStandby && mStandbyTimeout > 0)
+                postDelayed(mReleaseCamera, mStandbyTimeout);
+            mCameraService.attach(this);
         } catch (Throwable e) {
             e.printStackTrace();
+        } finally {
+            ScanTrace.end();
         }
     }
 
-    protected void createCameraPreview(SurfaceTexture texture) {
-        try {
-            captureRequestBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
-            texture.setDefaultBufferSize(imageDimension.getWidth(), imageDimension.getHeight());
-            Surface surface = new Surface(texture);
-            captureRequestBuilder.addTarget(surface);
-
-            CameraCharacteristics characteristics = mCameraManager.getCameraCharacteristics(mCameraId);
-            StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-            Size previewSize = chooseOptimalSize(map.getOutputSizes(ImageFormat.YUV_420_888), _surfaceTextureWidth, _surfaceTextureHeight);
-
-            Log.d(TAG, "Preview size: " + previewSize.getWidth() + "x" + previewSize.getHeight());
-            mImageReader = ImageReader.newInstance(previewSize.getWidth(), previewSize.getHeight(), ImageFormat.YUV_420_888, 2);
-
-            mImageReader.setOnImageAvailableListener(mPreviewCallback, mBackgroundHandler);
-
-            captureRequestBuilder.addTarget(mImageReader.getSurface());
+    /**
+     * Sizes the analysis stream for decoding rather than display: the largest supported
+     * size within the given number of pixels. 0 goes back to following the preview size.
+     * A running session is reconfigured; the camera device stays open.
+     */
+    public void setAnalysisPixelBudget(final long pixelBudget) {
+        if (pixelBudget == mAnalysisPixelBudget)
+            return;
 
-            mCameraDevice.createCaptureSession(Arrays.asList(surface, mImageReader.getSurface()), mCameraCaptureSessionCallback, null);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        Log.d(TAG, "Reconfiguring analysis stream for " + pixelBudget + " pixels");
+        mAnalysisPixelBudget = pixelBudget;
+        mCameraService.update(this);
     }
 
+    /**
+     * Areas of the supported analysis sizes matching the preview aspect ratio, ascending.
+     */
+    public long[] getAnalysisAreas() {
+        return mAnalysisAreas;
+    }
 
-    protected void updatePreview() {
-        if(null == mCameraDevice) {
-            Log.e(TAG, "Can't update preview!");
-            return;
-        }
+    /**
+     * Called by the camera service on its thread when a session is created for this view.
+     */
+    void onStreamConfigured(int sensorOrientation, long[] analysisAreas, int width, int height) {
+        mSensorOrientation = sensorOrientation;
+        mAnalysisAreas = analysisAreas;
+        AnalysisSizeListener listener = mAnalysisSizeListener;
+        if (listener != null)
+            listener.onAnalysisSizeChosen(width, height);
+    }
 
-        Log.d(TAG, "Updating preview");
-        captureRequestBuilder.set(CaptureRequest.CONTROL_MODE, CaptureRequest.CONTROL_MODE_AUTO);
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
 
-        if (!autoFocus) {
-            captureRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_OFF);
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        int height = MeasureSpec.getSize(heightMeasureSpec);
 
-            float minDist = getMinimumFocusDistance();
-            float num = ((focusDistance) * minDist / 100);
-            Log.d(TAG, "Setting focus: " + focusDistance + "(minimumFocusDistance: " + minDist + ") result: " + num);
+        Log.d(TAG, "TextureView Size: " + width + "x" + height);
+        setMeasuredDimension(width, height);
+    }
 
-            captureRequestBuilder.set(CaptureRequest.LENS_FOCUS_DISTANCE, num);
-        } else {
-            captureRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
-        }
+    /**
+     * Switches between the full frame rate and the reduced one used while nothing is
+     * being scanned. Safe to call from any thread.
+     */
+    public void setIdle(boolean idle) {
+        if (idle == mIdle)
+            return;
 
-        try {
-            mCameraCaptureSession.setRepeatingRequest(captureRequestBuilder.build(), null, mBackgroundHandler);
-        } catch (Throwable e) {
-            Log.e(TAG, "Error on upadte preview: " + e);
-        }
+        Log.d(TAG, idle ? "Idle, lowering frame rate" : "Active, back to full frame rate");
+        mIdle = idle;
+        mCameraService.update(this);
     }
 
-    protected void startBackgroundThread() {
-        mBackgroundThread = new HandlerThread("Camera Background");
-        mBackgroundThread.start();
-        mBackgroundHandler = new Handler(mBackgroundThread.getLooper());
+    /**
+     * Frame rate to drop to while idle, rounded up to the nearest supported range.
+     */
+    public void setIdleFps(int fps) {
+        mIdleFps = fps;
+        if (mIdle)
+            mCameraService.update(this);
     }
 
-    protected void stopBackgroundThread() {
-        if (mBackgroundThread == null)
+    /**
+     * Stops scanning but keeps the camera device and capture session open, so that
+     * exitStandby only has to restart the repeating request.
+     *
+     * @param lowFps        keep repeating at the lowest supported frame rate, which keeps
+     *                      exposure and focus converged, instead of stopping the stream
+     * @param timeoutMillis release the camera after this long in standby, 0 keeps it open
+     */
+    public void enterStandby(final boolean lowFps, long timeoutMillis) {
+        removeCallbacks(mReleaseCamera);
+        mStandbyLowFps = lowFps;
+        mStandbyTimeout = timeoutMillis;
+        mStandby = true;
+        if (!cameraRunning)
             return;
 
-        mBackgroundThread.quitSafely();
-        try {
-            mBackgroundThread.join();
-            mBackgroundThread = null;
-            mBackgroundHandler = null;
-        } catch (InterruptedException e) {
-            Log.i(TAG, "Exception when stopping thread: " + e);
-        }
-
-        cameraRunning = false;
+        if (timeoutMillis > 0)
+            postDelayed(mReleaseCamera, timeoutMillis);
+        mCameraService.update(this);
     }
 
-    @Override
-    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
-
-        int width = MeasureSpec.getSize(widthMeasureSpec);
-        int height = MeasureSpec.getSize(heightMeasureSpec);
+    /**
+     * Resumes scanning from standby with a single repeating request, or opens the camera
+     * again if it was released in the meantime. Either way this view takes the stream.
+     */
+    public void exitStandby() {
+        removeCallbacks(mReleaseCamera);
+        mStandby = false;
+        if (cameraRunning)
+            mCameraService.attach(this);
+        else if (_surfaceTexture != null)
+            openCamera();
+    }
 
-        Log.d(TAG, "TextureView Size: " + width + "x" + height);
-        setMeasuredDimension(width, height);
+    public boolean isStandby() {
+        return mStandby;
     }
 
+    /**
+     * Detaches from the shared camera, which closes once no preview is attached.
+     */
     public void closeCamera() {
-        if (mCameraDevice != null)
-            mCameraDevice.close();
-
-        stopBackgroundThread();
+        removeCallbacks(mReleaseCamera);
+        mStandby = false;
+        cameraRunning = false;
+        mCameraService.detach(this);
     }
 
     @Override
     public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
-        _surfaceTexture = surface;
+        ScanTrace.milestone(mScanTimeline, ScanTimeline.SURFACE_AVAILABLE);
         _surfaceTextureWidth = width;
         _surfaceTextureHeight = height;
+        _surfaceTexture = surface;
 
         openCamera();
     }
 
     @Override
     public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) {
-        _surfaceTexture = surface;
         _surfaceTextureWidth = width;
         _surfaceTextureHeight = height;
+        _surfaceTexture = surface;
         try {
             Log.d(TAG, "CHANGING ASPECT RATIO: " + width + "x" + height);
 
@@ -258,7 +265,8 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
         _surfaceTexture = null;
         _surfaceTextureWidth = 0;
         _surfaceTextureHeight = 0;
-        stopBackgroundThread();
+        // the session cannot outlive its preview surface
+        closeCamera();
         return true;
     }
 
@@ -266,22 +274,26 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
     public void onSurfaceTextureUpdated(SurfaceTexture surface) {
     }
 
-    public void setFlash(boolean flag) {
-        if (captureRequestBuilder == null) {
-            Log.w(TAG, "setFlash couldn't finish!");
-            return;
-        }
-
-        if (flag)
-            captureRequestBuilder.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_TORCH);
-        else
-            captureRequestBuilder.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_OFF);
+    public void setFlash(final boolean flag) {
+        flash = flag;
+        mCameraService.update(this);
+    }
 
-        try {
-            mCameraCaptureSession.setRepeatingRequest(captureRequestBuilder.build(), null, mBackgroundHandler);
-        } catch (Throwable e) {
-            Log.e(TAG, "CAMERA ERROR: " + e);
+    /**
+     * Clockwise rotation, in degrees, that brings sensor frames upright on the current display.
+     */
+    public int getFrameRotation() {
+        WindowManager windowManager = (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
+        int displayRotation = windowManager != null ? windowManager.getDefaultDisplay().getRotation() : Surface.ROTATION_0;
+
+        int displayDegrees;
+        switch (displayRotation) {
+            case Surface.ROTATION_90: displayDegrees = 90; break;
+            case Surface.ROTATION_180: displayDegrees = 180; break;
+            case Surface.ROTATION_270: displayDegrees = 270; break;
+            default: displayDegrees = 0;
         }
+        return (mSensorOrientation - displayDegrees + 360) % 360;
     }
 
     ////////////////////////// FOCUS FUNCTIONS
@@ -293,77 +305,67 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
             return;
 
         this.autoFocus = autoFocus;
-        updatePreview();
+        mCameraService.update(this);
     }
 
     public void setFocusDistance(int focus) {
         this.focusDistance = focus;
 
-        updatePreview();
+        mCameraService.update(this);
     }
 
-    private float getMinimumFocusDistance() {
-        if (mCameraId == null)
-            return 0;
+    ////////////////////////// CAMERA SERVICE ACCESSORS
+    // read on the camera thread while this view owns the stream
 
-        Float minimumLens = null;
-        try {
-            CameraManager manager = (CameraManager) getContext().getSystemService(Context.CAMERA_SERVICE);
-            CameraCharacteristics c = manager.getCameraCharacteristics(mCameraId);
-            minimumLens = c.get(CameraCharacteristics.LENS_INFO_MINIMUM_FOCUS_DISTANCE);
-        } catch (Exception e) {
-            Log.e(TAG, "isHardwareLevelSupported Error", e);
-        }
-        if (minimumLens != null)
-            return minimumLens;
-        return 0;
-    }
-
-    ////////////////////////// HELPER FUNCTIONS
-    // Taken from https://github.com/googlesamples/android-Camera2Basic
-    private static Size chooseOptimalSize(Size[] choices, int textureViewWidth,
-                                          int textureViewHeight) {
-        int maxWidth = textureViewWidth, maxHeight = textureViewHeight;
-        Size aspectRatio = new Size(textureViewWidth, textureViewHeight);
-
-        // Collect the supported resolutions that are at least as big as the preview Surface
-        List<Size> bigEnough = new ArrayList<>();
-        // Collect the supported resolutions that are smaller than the preview Surface
-        List<Size> notBigEnough = new ArrayList<>();
-        int w = aspectRatio.getWidth();
-        int h = aspectRatio.getHeight();
-        for (Size option : choices) {
-            if (option.getWidth() <= maxWidth && option.getHeight() <= maxHeight &&
-                    option.getHeight() == option.getWidth() * h / w) {
-                if (option.getWidth() >= textureViewWidth &&
-                        option.getHeight() >= textureViewHeight) {
-                    bigEnough.add(option);
-                } else {
-                    notBigEnough.add(option);
-                }
-            }
-        }
+    SurfaceTexture getPreviewTexture() {
+        return _surfaceTexture;
+    }
 
-        // Pick the smallest of those big enough. If there is no one big enough, pick the
-        // largest of those not big enough.
-        if (bigEnough.size() > 0) {
-            return Collections.min(bigEnough, new com.sunmi.scanner.CameraPreview.CompareSizesByArea());
-        } else if (notBigEnough.size() > 0) {
-            return Collections.max(notBigEnough, new com.sunmi.scanner.CameraPreview.CompareSizesByArea());
-        } else {
-            Log.e(TAG, "Couldn't find any suitable preview size");
-            return choices[0];
-        }
+    int getPreviewWidth() {
+        return _surfaceTextureWidth;
     }
 
-    static class CompareSizesByArea implements Comparator<Size> {
+    int getPreviewHeight() {
+        return _surfaceTextureHeight;
+    }
 
-        @Override
-        public int compare(Size lhs, Size rhs) {
-            // We cast here to ensure the multiplications won't overflow
-            return Long.signum((long) lhs.getWidth() * lhs.getHeight() -
-                    (long) rhs.getWidth() * rhs.getHeight());
-        }
+    FrameSink getFrameSink() {
+        return mFrameSink;
+    }
+
+    ScanMetrics getScanMetrics() {
+        return mScanMetrics;
+    }
+
+    ScanTimeline getScanTimeline() {
+        return mScanTimeline;
+    }
+
+    long getAnalysisPixelBudget() {
+        return mAnalysisPixelBudget;
+    }
+
+    boolean isIdle() {
+        return mIdle;
+    }
+
+    int getIdleFps() {
+        return mIdleFps;
+    }
+
+    boolean isStandbyLowFps() {
+        return mStandbyLowFps;
+    }
+
+    boolean isAutoFocus() {
+        return autoFocus;
+    }
+
+    int getFocusDistance() {
+        return focusDistance;
+    }
 
+    boolean isFlash() {
+        return flash;
     }
 }
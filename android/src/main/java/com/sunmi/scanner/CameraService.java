@@ -0,0 +1,532 @@
+package com.sunmi.scanner;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureFailure;
+import android.hardware.camera2.CaptureRequest;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.util.Log;
+import android.util.Range;
+import android.util.Size;
+import android.view.Surface;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Process-wide owner of the camera device, the capture session and the analysis
+ * ImageReader, shared by all CameraPreview instances.
+ *
+ * Previews attach and detach with reference counting. The most recently attached
+ * one that is not in standby owns the stream: its surface gets the preview, its sink gets the frames and
+ * its settings drive the capture request. When a new preview attaches, or the owner
+ * detaches while others remain, only the capture session is recreated for the new
+ * owner; the device stays open and the ImageReader is reused when its size fits.
+ * After the last preview detaches the camera lingers briefly, so a scanner screen
+ * replacing another one takes over the open camera too.
+ *
+ * When the camera is evicted, fails or cannot configure a session while previews are
+ * attached, it is reopened with an increasing delay.
+ *
+ * Everything below the client list runs on the camera background thread.
+ */
+@TargetApi(23)
+public final class CameraService {
+    private static final String TAG = "CameraService";
+    // long enough to cover one scanner screen unmounting while the next one mounts
+    private static final long LINGER_MILLIS = 1000;
+    // delay before retrying after the camera was lost, doubled on every failure in a row
+    private static final long RETRY_MIN_MILLIS = 500;
+    private static final long RETRY_MAX_MILLIS = 8000;
+
+    private static final CameraService INSTANCE = new CameraService();
+
+    public static CameraService getInstance() {
+        return INSTANCE;
+    }
+
+    // attached previews, most recently attached last; guarded by this
+    private final ArrayList<CameraPreview> clients = new ArrayList<>();
+    private HandlerThread thread;
+    private volatile Handler handler;
+    private volatile CameraPreview owner;
+    private volatile CameraManager manager;
+
+    // camera thread only
+    private CameraInfoCache.CameraInfo cameraInfo;
+    private CameraDevice device;
+    private boolean opening;
+    private CameraCaptureSession session;
+    private CaptureRequest.Builder captureRequestBuilder;
+    private Range<Integer> activeFpsRange;
+    private ImageReader imageReader;
+    private Surface previewSurface;
+    // what the current session was created for
+    private CameraPreview sessionOwner;
+    private SurfaceTexture sessionTexture;
+    private long sessionPixelBudget;
+    // identifies the latest session requested, callbacks of earlier ones are stale
+    private int sessionGeneration;
+    private CameraPreview lastSessionOwner;
+    private long retryDelay = RETRY_MIN_MILLIS;
+
+    private volatile long opens;
+    private volatile long takeovers;
+
+    private final Runnable reconcile = new Runnable() {
+        @Override
+        public void run() {
+            reconcile();
+        }
+    };
+
+    private final Runnable close = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (CameraService.this) {
+                if (!clients.isEmpty())
+                    return;
+            }
+            Log.d(TAG, "No previews left, closing camera");
+            closeSession();
+            lastSessionOwner = null;
+            if (device != null) {
+                device.close();
+                device = null;
+            }
+            if (imageReader != null) {
+                imageReader.close();
+                imageReader = null;
+            }
+            if (previewSurface != null) {
+                previewSurface.release();
+                previewSurface = null;
+            }
+            synchronized (CameraService.this) {
+                // an open still in flight is closed when it completes
+                if (clients.isEmpty() && !opening && thread != null) {
+                    thread.quitSafely();
+                    thread = null;
+                    handler = null;
+                }
+            }
+        }
+    };
+
+    private final CameraDevice.StateCallback stateCallback = new CameraDevice.StateCallback() {
+        @Override
+        public void onOpened(@NonNull CameraDevice camera) {
+            opening = false;
+            device = camera;
+            opens++;
+            retryDelay = RETRY_MIN_MILLIS;
+            CameraPreview client = owner;
+            if (client != null)
+                ScanTrace.milestone(client.getScanTimeline(), ScanTimeline.CAMERA_OPENED);
+            if (client == null)
+                close.run();
+            else
+                reconcile();
+        }
+
+        @Override
+        public void onDisconnected(@NonNull CameraDevice camera) {
+            Log.w(TAG, "Camera disconnected");
+            release(camera);
+        }
+
+        @Override
+        public void onError(@NonNull CameraDevice camera, int error) {
+            Log.e(TAG, "Camera error " + error);
+            release(camera);
+        }
+
+        private void release(CameraDevice camera) {
+            opening = false;
+            if (device == camera) {
+                closeSession();
+                device = null;
+            }
+            camera.close();
+            // previews still showing get the camera back once it is available again
+            retry();
+        }
+    };
+
+    private final CameraCaptureSession.CaptureCallback captureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                    @NonNull CaptureFailure failure) {
+            captureFailed();
+        }
+
+        @Override
+        public void onCaptureBufferLost(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                        @NonNull Surface target, long frameNumber) {
+            captureFailed();
+        }
+
+        private void captureFailed() {
+            CameraPreview client = sessionOwner;
+            ScanMetrics scanMetrics = client != null ? client.getScanMetrics() : null;
+            if (scanMetrics != null)
+                scanMetrics.captureFailed();
+        }
+    };
+
+    private final ImageReader.OnImageAvailableListener imageAvailableListener = new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            ScanTrace.begin("SunmiScanner frame");
+            try (android.media.Image image = reader.acquireNextImage()) {
+                if (image == null)
+                    return;
+                CameraPreview client = sessionOwner;
+                // a low frame rate standby still delivers frames, which are not scanned
+                if (client == null || client.isStandby())
+                    return;
+                ScanTrace.milestone(client.getScanTimeline(), ScanTimeline.FIRST_FRAME);
+                long timestamp = image.getTimestamp();
+                ScanMetrics scanMetrics = client.getScanMetrics();
+                if (scanMetrics != null && cameraInfo.timestampRealtime)
+                    scanMetrics.record(ScanMetrics.STAGE_DELIVERY, SystemClock.elapsedRealtimeNanos() - timestamp);
+
+                FrameSink sink = client.getFrameSink();
+                if (sink == null)
+                    return;
+                android.media.Image.Plane luma = image.getPlanes()[0];
+                sink.onFrame(luma.getBuffer(), luma.getRowStride(), luma.getPixelStride(),
+                        image.getWidth(), image.getHeight(), timestamp);
+            } catch (Exception e) {
+                // the reader may be closed while a frame is being delivered
+                Log.e(TAG, e.toString(), e);
+            } finally {
+                ScanTrace.end();
+            }
+        }
+    };
+
+    private CameraService() {
+    }
+
+    /**
+     * Adds the preview, or moves it to the top if already attached, and hands it the
+     * stream. Opens the camera if it is not open yet.
+     */
+    public synchronized void attach(CameraPreview client) {
+        clients.remove(client);
+        clients.add(client);
+        chooseOwner();
+        if (manager == null)
+            manager = (CameraManager) client.getContext().getApplicationContext().getSystemService(Context.CAMERA_SERVICE);
+        if (thread == null) {
+            thread = new HandlerThread("Camera Background");
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+        handler.removeCallbacks(close);
+        handler.post(reconcile);
+    }
+
+    /**
+     * Removes the preview. The stream passes to the most recently attached remaining
+     * one; without any, the camera is closed after a short linger.
+     */
+    public synchronized void detach(CameraPreview client) {
+        if (!clients.remove(client))
+            return;
+        chooseOwner();
+        // the session cannot outlive the preview surface it was created for
+        handler.post(reconcile);
+        if (clients.isEmpty())
+            handler.postDelayed(close, LINGER_MILLIS);
+    }
+
+    /**
+     * Applies changed settings of the preview. A preview entering or leaving standby
+     * may also pass the stream on.
+     */
+    public synchronized void update(CameraPreview client) {
+        if (!clients.contains(client))
+            return;
+        CameraPreview previous = owner;
+        chooseOwner();
+        if (client == owner || previous != owner)
+            handler.post(reconcile);
+    }
+
+    /**
+     * The most recently attached preview that is not in standby, else the most recently
+     * attached one, so an inactive screen never holds the stream of an active one.
+     */
+    private void chooseOwner() {
+        CameraPreview chosen = null;
+        for (int i = clients.size() - 1; i >= 0 && chosen == null; i--) {
+            if (!clients.get(i).isStandby())
+                chosen = clients.get(i);
+        }
+        if (chosen == null && !clients.isEmpty())
+            chosen = clients.get(clients.size() - 1);
+        owner = chosen;
+    }
+
+    public synchronized int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Times the camera device was opened.
+     */
+    public long getOpenCount() {
+        return opens;
+    }
+
+    /**
+     * Times a preview took over the stream from another one without reopening the camera.
+     */
+    public long getTakeoverCount() {
+        return takeovers;
+    }
+
+    /**
+     * Brings the device and session in line with the current owner and its settings.
+     */
+    private void reconcile() {
+        CameraPreview client = owner;
+        if (client == null) {
+            closeSession();
+            return;
+        }
+        if (device == null) {
+            if (!opening)
+                open();
+            return;
+        }
+
+        SurfaceTexture texture = client.getPreviewTexture();
+        if (texture == null) {
+            // picked up again when the owner's surface becomes available
+            closeSession();
+            return;
+        }
+        if (sessionOwner != client || sessionTexture != texture || sessionPixelBudget != client.getAnalysisPixelBudget())
+            createSession(client, texture);
+        else if (session != null)
+            updatePreview();
+    }
+
+    private void open() {
+        ScanTrace.begin("SunmiScanner CameraManager.openCamera");
+        try {
+            String cameraId = CameraInfoCache.getDefaultCameraId(manager);
+            cameraInfo = CameraInfoCache.get(manager, cameraId);
+            opening = true;
+            // device and session callbacks arrive on this thread, off the UI thread
+            manager.openCamera(cameraId, stateCallback, handler);
+        } catch (Throwable e) {
+            opening = false;
+            Log.e(TAG, "Cannot open camera", e);
+            retry();
+        } finally {
+            ScanTrace.end();
+        }
+    }
+
+    private void createSession(CameraPreview client, SurfaceTexture texture) {
+        ScanTrace.begin("SunmiScanner createSession");
+        try {
+            configureSession(client, texture);
+        } finally {
+            ScanTrace.end();
+        }
+    }
+
+    private void configureSession(final CameraPreview client, SurfaceTexture texture) {
+        closeSession();
+        if (lastSessionOwner != null && lastSessionOwner != client)
+            takeovers++;
+        lastSessionOwner = client;
+        sessionOwner = client;
+        sessionTexture = texture;
+        sessionPixelBudget = client.getAnalysisPixelBudget();
+        final int generation = ++sessionGeneration;
+
+        try {
+            // the preview template favours low latency over the steady frame rate of the record one
+            captureRequestBuilder = device.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+            activeFpsRange = captureRequestBuilder.get(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE);
+            if (activeFpsRange == null)
+                activeFpsRange = cameraInfo.chooseFpsRange(Integer.MAX_VALUE);
+
+            int textureWidth = client.getPreviewWidth();
+            int textureHeight = client.getPreviewHeight();
+            Size imageDimension = chooseOptimalSize(cameraInfo.previewSizes, textureWidth, textureHeight);
+            Log.d(TAG, "Used size: " + imageDimension.getWidth() + "x" + imageDimension.getHeight());
+            texture.setDefaultBufferSize(imageDimension.getWidth(), imageDimension.getHeight());
+            if (previewSurface != null)
+                previewSurface.release();
+            previewSurface = new Surface(texture);
+            captureRequestBuilder.addTarget(previewSurface);
+
+            Size[] analysisChoices = cameraInfo.analysisSizes;
+            Size analysisSize = sessionPixelBudget > 0
+                    ? chooseAnalysisSize(analysisChoices, sessionPixelBudget, imageDimension)
+                    : chooseOptimalSize(analysisChoices, textureWidth, textureHeight);
+            Log.d(TAG, "Preview size: " + analysisSize.getWidth() + "x" + analysisSize.getHeight());
+            client.onStreamConfigured(cameraInfo.sensorOrientation, matchingAreas(analysisChoices, imageDimension),
+                    analysisSize.getWidth(), analysisSize.getHeight());
+
+            if (imageReader == null || imageReader.getWidth() != analysisSize.getWidth()
+                    || imageReader.getHeight() != analysisSize.getHeight()) {
+                if (imageReader != null)
+                    imageReader.close();
+                imageReader = ImageReader.newInstance(analysisSize.getWidth(), analysisSize.getHeight(),
+                        ImageFormat.YUV_420_888, 2);
+                imageReader.setOnImageAvailableListener(imageAvailableListener, handler);
+            }
+            captureRequestBuilder.addTarget(imageReader.getSurface());
+
+            device.createCaptureSession(Arrays.asList(previewSurface, imageReader.getSurface()),
+                    new CameraCaptureSession.StateCallback() {
+                        @Override
+                        public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
+                            // the camera closed or another session was requested in the meantime
+                            if (device == null || generation != sessionGeneration || sessionOwner != client) {
+                                cameraCaptureSession.close();
+                                return;
+                            }
+                            session = cameraCaptureSession;
+                            retryDelay = RETRY_MIN_MILLIS;
+                            ScanTrace.milestone(client.getScanTimeline(), ScanTimeline.SESSION_CONFIGURED);
+                            updatePreview();
+                        }
+
+                        @Override
+                        public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
+                            cameraCaptureSession.close();
+                            if (generation != sessionGeneration || sessionOwner != client)
+                                return;
+                            Log.e(TAG, "Cannot configure capture session");
+                            closeSession();
+                            retry();
+                        }
+                    }, handler);
+        } catch (Exception e) {
+            Log.e(TAG, "Cannot create capture session", e);
+        }
+    }
+
+    /**
+     * Runs reconcile again after the retry delay, which then doubles, as long as any
+     * preview is attached.
+     */
+    private void retry() {
+        synchronized (this) {
+            if (clients.isEmpty() || handler == null)
+                return;
+            Log.w(TAG, "Retrying in " + retryDelay + " ms");
+            handler.postDelayed(reconcile, retryDelay);
+        }
+        retryDelay = Math.min(retryDelay * 2, RETRY_MAX_MILLIS);
+    }
+
+    private void closeSession() {
+        if (session != null) {
+            session.close();
+            session = null;
+        }
+        sessionOwner = null;
+        sessionTexture = null;
+    }
+
+    private void updatePreview() {
+        CameraPreview client = sessionOwner;
+        if (device == null || session == null || client == null) {
+            Log.e(TAG, "Can't update preview!");
+            return;
+        }
+
+        Log.d(TAG, "Updating preview");
+        CaptureRequest.Builder builder = captureRequestBuilder;
+        builder.set(CaptureRequest.CONTROL_MODE, CaptureRequest.CONTROL_MODE_AUTO);
+        Range<Integer> fpsRange = client.isIdle() ? cameraInfo.chooseFpsRange(client.getIdleFps()) : activeFpsRange;
+        if (fpsRange != null)
+            builder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange);
+
+        if (!client.isAutoFocus()) {
+            builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_OFF);
+
+            float minDist = cameraInfo.minimumFocusDistance;
+            float num = (client.getFocusDistance() * minDist / 100);
+            Log.d(TAG, "Setting focus: " + client.getFocusDistance() + "(minimumFocusDistance: " + minDist + ") result: " + num);
+
+            builder.set(CaptureRequest.LENS_FOCUS_DISTANCE, num);
+        } else {
+            builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+        }
+        builder.set(CaptureRequest.FLASH_MODE,
+                client.isFlash() ? CameraMetadata.FLASH_MODE_TORCH : CameraMetadata.FLASH_MODE_OFF);
+
+        try {
+            if (client.isStandby()) {
+                Range<Integer> standbyRange = cameraInfo.getLowestFpsRange();
+                if (client.isStandbyLowFps() && standbyRange != null) {
+                    // keeps exposure and focus converged for a quick resume
+                    Log.d(TAG, "Standby at " + standbyRange + " fps");
+                    builder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, standbyRange);
+                    session.setRepeatingRequest(builder.build(), captureCallback, handler);
+                } else {
+                    Log.d(TAG, "Standby, repeating request stopped");
+                    session.stopRepeating();
+                }
+                return;
+            }
+            session.setRepeatingRequest(builder.build(), captureCallback, handler);
+        } catch (Throwable e) {
+            Log.e(TAG, "Error on upadte preview: " + e);
+        }
+    }
+
+    ////////////////////////// HELPER FUNCTIONS
+    // Selection itself lives in SizeSelector so it can be benchmarked off-device.
+    private static Size chooseOptimalSize(Size[] choices, int textureViewWidth,
+                                          int textureViewHeight) {
+        int[][] dimensions = dimensionsOf(choices);
+        int index = SizeSelector.chooseOptimalSize(dimensions[0], dimensions[1], textureViewWidth, textureViewHeight);
+        if (index < 0) {
+            Log.e(TAG, "Couldn't find any suitable preview size");
+            return choices[0];
+        }
+        return choices[index];
+    }
+
+    private static Size chooseAnalysisSize(Size[] choices, long pixelBudget, Size aspect) {
+        int[][] dimensions = dimensionsOf(choices);
+        return choices[SizeSelector.chooseAnalysisSize(dimensions[0], dimensions[1], pixelBudget,
+                aspect.getWidth(), aspect.getHeight())];
+    }
+
+    private static long[] matchingAreas(Size[] choices, Size aspect) {
+        int[][] dimensions = dimensionsOf(choices);
+        return SizeSelector.matchingAreas(dimensions[0], dimensions[1], aspect.getWidth(), aspect.getHeight());
+    }
+
+    private static int[][] dimensionsOf(Size[] sizes) {
+        int[][] dimensions = new int[2][sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            dimensions[0][i] = sizes[i].getWidth();
+            dimensions[1][i] = sizes[i].getHeight();
+        }
+        return dimensions;
+    }
+}
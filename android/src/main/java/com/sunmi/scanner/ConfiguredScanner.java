@@ -0,0 +1,34 @@
+package com.sunmi.scanner;
+
+import com.sunmi.scan.Image;
+import com.sunmi.scan.ImageScanner;
+import com.sunmi.scan.SymbolSet;
+
+/**
+ * ImageScanner that picks up ScannerConfig changes before each scan.
+ *
+ * Not thread-safe: each decode thread owns its own instance.
+ */
+public class ConfiguredScanner {
+    private final ScannerConfig config;
+    private final ImageScanner scanner = new ImageScanner();
+    private int appliedVersion = -1;
+
+    public ConfiguredScanner(ScannerConfig config) {
+        this.config = config;
+    }
+
+    public int scanImage(Image image) {
+        if (config.getVersion() != appliedVersion)
+            appliedVersion = config.applyTo(scanner);
+        return scanner.scanImage(image);
+    }
+
+    public SymbolSet getResults() {
+        return scanner.getResults();
+    }
+
+    public void destroy() {
+        scanner.destroy();
+    }
+}
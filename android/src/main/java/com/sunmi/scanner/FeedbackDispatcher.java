@@ -0,0 +1,176 @@
+package com.sunmi.scanner;
+
+import android.Manifest;
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.database.ContentObserver;
+import android.media.AudioManager;
+import android.media.SoundPool;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.os.VibrationEffect;
+import android.os.Vibrator;
+import android.provider.Settings;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Plays the scan beep and vibration on its own thread.
+ *
+ * Decode threads only post a request, which costs next to nothing and never blocks.
+ * The volume is cached and refreshed when the system settings change instead of
+ * being queried for every beep, the beep is skipped until its sample has loaded,
+ * and bursts of scans produce at most one beep and vibration per interval.
+ */
+@TargetApi(23)
+public class FeedbackDispatcher {
+    private static final String TAG = "FeedbackDispatcher";
+
+    private final AudioManager audioManager;
+    private final Vibrator vibrator;
+    // the library does not request VIBRATE, apps using vibration declare it themselves
+    private final boolean vibrateGranted;
+    private final int streamType;
+    private final HandlerThread thread;
+    private final Handler handler;
+    private final SoundPool soundPool;
+    private final ContentObserver volumeObserver;
+    private final AtomicBoolean pending = new AtomicBoolean();
+
+    // only touched on the feedback thread
+    private int soundId;
+    private boolean soundLoaded;
+    private float volume;
+    private long lastFeedback;
+
+    private volatile boolean sound = true;
+    private volatile long vibrateMillis;
+    private volatile long minIntervalMillis = 200;
+
+    private final Runnable dispatch = new Runnable() {
+        @Override
+        public void run() {
+            pending.set(false);
+            long now = SystemClock.uptimeMillis();
+            if (lastFeedback != 0 && now - lastFeedback < minIntervalMillis)
+                return;
+            lastFeedback = now;
+
+            if (sound && soundLoaded && volume > 0)
+                soundPool.play(soundId, volume, volume, 1, 0, 1);
+            if (vibrateMillis > 0 && vibrateGranted && vibrator != null && vibrator.hasVibrator())
+                vibrate(vibrateMillis);
+        }
+    };
+
+    /**
+     * @param soundRes   raw resource of the beep, 0 for none
+     * @param streamType stream whose volume the beep follows, e.g. AudioManager.STREAM_RING
+     */
+    public FeedbackDispatcher(final Context context, final int soundRes, int streamType) {
+        this.streamType = streamType;
+        audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        vibrator = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
+        vibrateGranted = context.checkCallingOrSelfPermission(Manifest.permission.VIBRATE)
+                == PackageManager.PERMISSION_GRANTED;
+        thread = new HandlerThread(TAG);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+
+        soundPool = new SoundPool(1, AudioManager.STREAM_MUSIC, 0);
+        soundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
+            @Override
+            public void onLoadComplete(SoundPool pool, final int sampleId, final int status) {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (sampleId == soundId && status == 0)
+                            soundLoaded = true;
+                    }
+                });
+            }
+        });
+
+        // volume changes are written to the system settings, which is all we need to know
+        volumeObserver = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                updateVolume();
+            }
+        };
+        context.getContentResolver().registerContentObserver(Settings.System.CONTENT_URI, true, volumeObserver);
+
+        final Context appContext = context.getApplicationContext();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                updateVolume();
+                if (soundRes != 0) {
+                    try {
+                        soundId = soundPool.load(appContext, soundRes, 1);
+                    } catch (Exception e) {
+                        // the sound is not mandatory
+                        Log.e(TAG, e.getMessage(), e);
+                    }
+                }
+            }
+        });
+    }
+
+    public void setSound(boolean sound) {
+        this.sound = sound;
+    }
+
+    /**
+     * Vibration length per scan in milliseconds, 0 turns vibration off. Needs the
+     * VIBRATE permission in the app manifest; without it there is no vibration.
+     */
+    public void setVibrateMillis(long vibrateMillis) {
+        if (vibrateMillis > 0 && !vibrateGranted)
+            Log.w(TAG, "Vibration needs android.permission.VIBRATE in the app manifest");
+        this.vibrateMillis = vibrateMillis;
+    }
+
+    /**
+     * Minimum time between two beeps or vibrations; scans in between are silent.
+     */
+    public void setMinIntervalMillis(long minIntervalMillis) {
+        this.minIntervalMillis = minIntervalMillis;
+    }
+
+    /**
+     * Requests feedback for a scan. Safe to call from any thread.
+     */
+    public void dispatch() {
+        if (pending.compareAndSet(false, true))
+            handler.post(dispatch);
+    }
+
+    public void release(Context context) {
+        context.getContentResolver().unregisterContentObserver(volumeObserver);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                soundPool.release();
+            }
+        });
+        thread.quitSafely();
+    }
+
+    private void updateVolume() {
+        int max = audioManager.getStreamMaxVolume(streamType);
+        volume = max > 0 ? (float) audioManager.getStreamVolume(streamType) / max : 0;
+    }
+
+    @SuppressWarnings("deprecation")
+    private void vibrate(long millis) {
+        if (Build.VERSION.SDK_INT >= 26)
+            vibrator.vibrate(VibrationEffect.createOneShot(millis, VibrationEffect.DEFAULT_AMPLITUDE));
+        else
+            vibrator.vibrate(millis);
+    }
+}
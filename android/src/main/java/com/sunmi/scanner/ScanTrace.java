@@ -0,0 +1,41 @@
+package com.sunmi.scanner;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Systrace sections around the scanner's startup and per-frame work, visible with
+ * {@code python systrace.py -a <package>} or in Android Studio's CPU profiler.
+ *
+ * Sections must end on the thread that began them. Milestones are empty sections,
+ * which show up as markers on the thread that reached them.
+ */
+public final class ScanTrace {
+    private static final boolean ENABLED = Build.VERSION.SDK_INT >= 18;
+
+    private ScanTrace() {
+    }
+
+    public static void begin(String name) {
+        if (ENABLED)
+            Trace.beginSection(name);
+    }
+
+    public static void end() {
+        if (ENABLED)
+            Trace.endSection();
+    }
+
+    /**
+     * Records the milestone on the timeline, and as a marker in the trace the first
+     * time it is reached.
+     */
+    public static void milestone(ScanTimeline timeline, int milestone) {
+        if (timeline == null || timeline.has(milestone))
+            return;
+        if (timeline.mark(milestone, System.nanoTime()) && ENABLED) {
+            Trace.beginSection("SunmiScanner " + ScanTimeline.getMilestoneName(milestone));
+            Trace.endSection();
+        }
+    }
+}
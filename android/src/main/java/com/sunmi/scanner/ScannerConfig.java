@@ -0,0 +1,59 @@
+package com.sunmi.scanner;
+
+import com.sunmi.scan.Config;
+import com.sunmi.scan.ImageScanner;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decoder settings shared by every ImageScanner of a view.
+ *
+ * Settings are recorded in the order they were last set and replayed onto each
+ * scanner by the thread that owns it, between two frames.
+ */
+public class ScannerConfig {
+    private final LinkedHashMap<Long, Integer> settings = new LinkedHashMap<>();
+    private int version;
+
+    public synchronized void set(int symbol, int config, int value) {
+        put(symbol, config, value);
+        version++;
+    }
+
+    /**
+     * Enables only the given symbologies, or all of them for an empty list. Applied as
+     * one change, so no frame is scanned with half of it.
+     */
+    public synchronized void setEnabledSymbols(int[] symbols) {
+        // symbol 0 addresses every decoder
+        put(0, Config.ENABLE, symbols.length == 0 ? 1 : 0);
+        for (int symbol : symbols)
+            put(symbol, Config.ENABLE, 1);
+        version++;
+    }
+
+    private void put(int symbol, int config, int value) {
+        Long key = ((long) symbol << 32) | (config & 0xffffffffL);
+        settings.remove(key);
+        settings.put(key, value);
+    }
+
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    /**
+     * Replays all settings onto the scanner and returns the version that was applied.
+     */
+    public synchronized int applyTo(ImageScanner scanner) {
+        Iterator<Map.Entry<Long, Integer>> it = settings.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Integer> entry = it.next();
+            long key = entry.getKey();
+            scanner.setConfig((int) (key >> 32), (int) key, entry.getValue());
+        }
+        return version;
+    }
+}
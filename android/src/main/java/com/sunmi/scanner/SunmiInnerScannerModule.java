@@ -1,49 +1,120 @@
 package com.sunmi.scanner;
 
 import android.app.Activity;
+import android.content.ActivityNotFoundException;
 import android.content.Intent;
 import android.os.Bundle;
+import android.util.Log;
 import com.facebook.react.bridge.*;
+import com.facebook.react.uimanager.NativeViewHierarchyManager;
+import com.facebook.react.uimanager.UIBlock;
+import com.facebook.react.uimanager.UIManagerModule;
 
+import com.sunmi.scan.Config;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 public class SunmiInnerScannerModule extends ReactContextBaseJavaModule {
 
     private static final String TAG = "SunmiInnerScannerModule";
-    private Promise promise;
+    private static final int REQUEST_SCAN = 2345;
+
+    /**
+     * One call into the scanner activity: a single scan, or a batch session that
+     * relaunches the activity from here until its stop condition is met.
+     */
+    private static class ScanRequest {
+        final ReadableMap options;
+        final Promise promise;
+        final boolean batch;
+        final List<Map<String, String>> codes = new ArrayList<>();
+        boolean repeat;
+        int maxCodes;
+        int maxScans;
+        String stopValue;
+        int scans;
+        boolean stopped;
+
+        ScanRequest(ReadableMap options, Promise promise, boolean batch) {
+            this.options = options;
+            this.promise = promise;
+            this.batch = batch;
+            if (batch && options != null) {
+                repeat = !options.hasKey("repeat") || options.getBoolean("repeat");
+                maxCodes = options.hasKey("maxCodes") ? options.getInt("maxCodes") : 0;
+                maxScans = options.hasKey("maxScans") ? options.getInt("maxScans") : 0;
+                stopValue = options.hasKey("stopValue") ? options.getString("stopValue") : null;
+            } else {
+                repeat = batch;
+            }
+        }
+
+        /**
+         * Adds the codes of one activity result and tells whether to scan again. A
+         * cancelled scan, the stop value or a reached limit ends the session.
+         */
+        boolean addAndContinue(List<? extends Map<String, String>> result) {
+            scans++;
+            if (result == null || result.isEmpty())
+                return false;
+
+            boolean stop = false;
+            for (Map<String, String> code : result) {
+                if (stopValue != null && stopValue.equals(code.get("VALUE")))
+                    stop = true;
+                else
+                    codes.add(code);
+            }
+            return repeat && !stop && !stopped
+                    && (maxCodes <= 0 || codes.size() < maxCodes)
+                    && (maxScans <= 0 || scans < maxScans);
+        }
+    }
+
+    // guarded by this; only one scanner activity is in front at a time
+    private final ArrayDeque<ScanRequest> pendingRequests = new ArrayDeque<>();
+    private ScanRequest currentRequest;
 
     private final ActivityEventListener eventListener = new BaseActivityEventListener() {
 
         @Override
         public void onActivityResult(Activity activity, int requestCode, int resultCode, Intent data) {
+            if (requestCode != REQUEST_SCAN)
+                return;
+
+            ScanRequest request;
+            synchronized (SunmiInnerScannerModule.this) {
+                request = currentRequest;
+                currentRequest = null;
+            }
+            if (request == null)
+                return;
+
             try {
-                if (requestCode == 2345 && data != null) {
-                    Bundle bundle = data.getExtras();
-                    ArrayList<HashMap<String, String>> result = (ArrayList<HashMap<String, String>>) bundle.getSerializable("data");
-                    Iterator<HashMap<String, String>> it = result.iterator();
-                    WritableNativeMap wnm = null;
-                    while (it.hasNext()) {
-                        Map<String, String> hashMap = it.next();
-                        wnm = new WritableNativeMap();
-                        wnm.putString("type", hashMap.get("TYPE"));//这个是扫码的类型
-                        wnm.putString("value", hashMap.get("VALUE"));//这个是扫码的结果
-                    }
-                    if (wnm != null) {
-                        promise.resolve(wnm);
-                    } else {
-                        promise.reject("DATA_NOT_FOUND", "No data found");
+                List<HashMap<String, String>> result = null;
+                Bundle bundle = data != null ? data.getExtras() : null;
+                if (bundle != null)
+                    result = (ArrayList<HashMap<String, String>>) bundle.getSerializable("data");
+
+                if (request.addAndContinue(result)) {
+                    // straight back into the scanner without a round trip through JS
+                    synchronized (SunmiInnerScannerModule.this) {
+                        currentRequest = request;
                     }
-                    promise = null;
+                    if (launch(request))
+                        return;
+                } else {
+                    finish(request);
                 }
             } catch (Exception ex) {
                 ex.printStackTrace();
-                promise.reject("ERROR", ex.getMessage());
-                promise = null;
+                request.promise.reject("ERROR", ex.getMessage());
             }
-
+            launchNext();
         }
     };
 
@@ -68,15 +139,72 @@ public class SunmiInnerScannerModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void openScannerWithOptions(ReadableMap options, final Promise p) {
-        promise = p;
-        Activity currentActivity = getCurrentActivity();
-        if (currentActivity == null) {
-            promise.reject("E_ACTIVITY_DOES_NOT_EXIST", "Activity doesn't exist");
-            return;
+        enqueue(new ScanRequest(options, p, false));
+    }
+
+    /**
+     * Scans several codes in one session and resolves with all of them as an array of
+     * {type, value}. Options are those of openScannerWithOptions, plus:
+     * repeat (default true) relaunches the scanner after each result until the user
+     * backs out, maxCodes and maxScans end the session after that many codes or
+     * launches, and stopValue ends it when that code is scanned.
+     */
+    @ReactMethod
+    public void scanBatch(ReadableMap options, final Promise p) {
+        enqueue(new ScanRequest(options, p, true));
+    }
+
+    /**
+     * Ends all batch sessions after their current scan.
+     */
+    @ReactMethod
+    public void stopBatch() {
+        synchronized (this) {
+            if (currentRequest != null)
+                currentRequest.stopped = true;
+            for (ScanRequest request : pendingRequests)
+                request.stopped = true;
+        }
+    }
+
+    private void enqueue(ScanRequest request) {
+        synchronized (this) {
+            pendingRequests.add(request);
+            if (currentRequest != null)
+                return;
         }
+        launchNext();
+    }
+
+    /**
+     * Starts the next queued request, unless one is already showing the scanner.
+     */
+    private void launchNext() {
+        while (true) {
+            ScanRequest request;
+            synchronized (this) {
+                if (currentRequest != null || pendingRequests.isEmpty())
+                    return;
+                request = pendingRequests.poll();
+                currentRequest = request;
+            }
+            if (launch(request))
+                return;
+        }
+    }
+
+    /**
+     * Opens the scanner activity for the current request. On failure the request is
+     * settled and cleared, and false returned.
+     */
+    private boolean launch(ScanRequest request) {
+        Activity currentActivity = getCurrentActivity();
+        if (currentActivity == null)
+            return abort(request, "E_ACTIVITY_DOES_NOT_EXIST", "Activity doesn't exist");
         final Intent intent = new Intent("com.summi.scan");
         intent.setPackage("com.sunmi.sunmiqrcodescanner");
 
+        ReadableMap options = request.options;
         if (options != null) {
             if (options.hasKey("paySound")) {
                 intent.putExtra("PLAY_SOUND", options.getBoolean("paySound"));
@@ -119,8 +247,211 @@ public class SunmiInnerScannerModule extends ReactContextBaseJavaModule {
 
  **/
 
-        currentActivity.startActivityForResult(intent, 2345);
+        try {
+            currentActivity.startActivityForResult(intent, REQUEST_SCAN);
+        } catch (ActivityNotFoundException e) {
+            Log.e(TAG, "Scanner app not installed", e);
+            return abort(request, "E_SCANNER_NOT_FOUND", "Scanner app not installed");
+        }
+        return true;
+    }
+
+    /**
+     * Clears a request that could not be launched and settles it: rejected, or resolved
+     * with the codes a batch collected so far.
+     *
+     * @return false, for launch to pass on
+     */
+    private boolean abort(ScanRequest request, String code, String message) {
+        synchronized (this) {
+            currentRequest = null;
+        }
+        if (request.codes.isEmpty())
+            request.promise.reject(code, message);
+        else
+            finish(request);
+        return false;
+    }
+
+    /**
+     * Settles a request with what it collected: the codes as an array for a batch, the
+     * last code with all codes of the scan under "codes" for a single scan.
+     */
+    private void finish(ScanRequest request) {
+        if (request.batch) {
+            request.promise.resolve(toArray(request.codes));
+            return;
+        }
+        if (request.codes.isEmpty()) {
+            request.promise.reject("DATA_NOT_FOUND", "No data found");
+            return;
+        }
+        WritableMap wnm = toMap(request.codes.get(request.codes.size() - 1));
+        wnm.putArray("codes", toArray(request.codes));
+        request.promise.resolve(wnm);
+    }
+
+    private static WritableArray toArray(List<Map<String, String>> codes) {
+        WritableArray array = new WritableNativeArray();
+        for (Map<String, String> code : codes)
+            array.pushMap(toMap(code));
+        return array;
+    }
+
+    private static WritableMap toMap(Map<String, String> code) {
+        WritableNativeMap wnm = new WritableNativeMap();
+        wnm.putString("type", code.get("TYPE"));//这个是扫码的类型
+        wnm.putString("value", code.get("VALUE"));//这个是扫码的结果
+        return wnm;
     }
 
+    /**
+     * Decodes barcodes from stored images off the UI thread. Every image is reported as
+     * soon as it is done through a SunmiScannerBulkResult event {batchId, index, uri,
+     * result} or {batchId, index, uri, error}; the promise resolves with
+     * {batchId, images, decoded, failed} once all are done.
+     *
+     * Options: batchId echoed in the events, workers (default 2), maxPixels above which
+     * images are downsampled (default 1920x1080, 0 for no limit), symbologies and
+     * inverseEnable as on the view. Concurrent calls share one pool of a thread per
+     * core and are worked off in turn.
+     */
+    @ReactMethod
+    public void decodeImages(ReadableArray sources, ReadableMap options, final Promise p) {
+        List<String> paths = new ArrayList<>(sources.size());
+        for (int i = 0; i < sources.size(); i++)
+            paths.add(sources.getString(i));
+
+        ScannerConfig config = BulkDecoder.defaultConfig();
+        int batchId = 0;
+        int workers = 2;
+        long maxPixels = 1920 * 1080;
+        if (options != null) {
+            if (options.hasKey("batchId"))
+                batchId = options.getInt("batchId");
+            if (options.hasKey("workers"))
+                workers = options.getInt("workers");
+            if (options.hasKey("maxPixels"))
+                maxPixels = (long) options.getDouble("maxPixels");
+            if (options.hasKey("inverseEnable"))
+                config.set(0, Config.ENABLE_INVERSE, options.getInt("inverseEnable"));
+            if (options.hasKey("symbologies"))
+                config.setEnabledSymbols(Symbologies.typesOf(options.getArray("symbologies")));
+        }
+        new BulkDecoder(getReactApplicationContext(), paths, config, batchId, maxPixels, p).start(workers);
+    }
 
+    /**
+     * Looks up the camera configuration the scanner view needs ahead of time, so
+     * mounting the view goes straight to opening the camera. Resolves with the camera id.
+     */
+    @ReactMethod
+    public void prewarmCamera(final Promise p) {
+        try {
+            CameraInfoCache.CameraInfo info = CameraInfoCache.prewarm(getReactApplicationContext());
+            p.resolve(info.cameraId);
+        } catch (Exception ex) {
+            p.reject("E_CAMERA_UNAVAILABLE", ex.getMessage());
+        }
+    }
+
+    /**
+     * Resolves with the startup milestones of the most recently mounted scanner view, in
+     * milliseconds since it was created: viewCreated, surfaceAvailable, openCamera,
+     * cameraOpened, sessionConfigured, firstFrame, firstDecode and firstResult.
+     */
+    @ReactMethod
+    public void getScanTimeline(final Promise p) {
+        p.resolve(SunmiInnerScannerView.getLastScanTimeline());
+    }
+
+    @ReactMethod
+    public void getFramePoolStats(final int viewTag, final Promise p) {
+        withScannerView(viewTag, p, new ViewAction() {
+            @Override
+            public Object run(SunmiInnerScannerView view) {
+                return view.getFramePoolStats();
+            }
+        });
+    }
+
+    @ReactMethod
+    public void getDecodeStats(final int viewTag, final Promise p) {
+        withScannerView(viewTag, p, new ViewAction() {
+            @Override
+            public Object run(SunmiInnerScannerView view) {
+                return view.getDecodeStats();
+            }
+        });
+    }
+
+    @ReactMethod
+    public void getScannerStats(final int viewTag, final Promise p) {
+        withScannerView(viewTag, p, new ViewAction() {
+            @Override
+            public Object run(SunmiInnerScannerView view) {
+                return view.getScannerStats();
+            }
+        });
+    }
+
+    @ReactMethod
+    public void resetScannerStats(final int viewTag, final Promise p) {
+        withScannerView(viewTag, p, new ViewAction() {
+            @Override
+            public Object run(SunmiInnerScannerView view) {
+                view.resetScannerStats();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Tells the view that the result event with the given batch id has been handled,
+     * which lets it emit the next one.
+     */
+    @ReactMethod
+    public void acknowledgeResults(final int viewTag, final double batchId, final Promise p) {
+        withScannerView(viewTag, p, new ViewAction() {
+            @Override
+            public Object run(SunmiInnerScannerView view) {
+                view.acknowledgeResults((long) batchId);
+                return null;
+            }
+        });
+    }
+
+    @ReactMethod
+    public void clearDuplicateCache(final int viewTag, final Promise p) {
+        withScannerView(viewTag, p, new ViewAction() {
+            @Override
+            public Object run(SunmiInnerScannerView view) {
+                view.clearDuplicateCache();
+                return null;
+            }
+        });
+    }
+
+    private interface ViewAction {
+        Object run(SunmiInnerScannerView view);
+    }
+
+    /**
+     * Resolves a mounted scanner view by its react tag on the UI thread and resolves
+     * the promise with whatever the action returns.
+     */
+    private void withScannerView(final int viewTag, final Promise p, final ViewAction action) {
+        UIManagerModule uiManager = getReactApplicationContext().getNativeModule(UIManagerModule.class);
+        uiManager.addUIBlock(new UIBlock() {
+            @Override
+            public void execute(NativeViewHierarchyManager nativeViewHierarchyManager) {
+                try {
+                    SunmiInnerScannerView view = (SunmiInnerScannerView) nativeViewHierarchyManager.resolveView(viewTag);
+                    p.resolve(action.run(view));
+                } catch (Exception ex) {
+                    p.reject("E_VIEW_NOT_FOUND", ex.getMessage());
+                }
+            }
+        });
+    }
 }
@@ -3,21 +3,18 @@ package com.sunmi.scanner;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.Configuration;
-import android.graphics.Rect;
-import android.media.ImageReader;
-import android.os.AsyncTask;
-import android.util.DisplayMetrics;
+import android.media.AudioManager;
 import android.util.Log;
 import android.view.View;
-import android.view.WindowManager;
 import android.widget.RelativeLayout;
 
 import com.facebook.react.bridge.*;
-import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.facebook.react.uimanager.events.RCTEventEmitter;
 
 import com.sunmi.scan.*;
 
-import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by januslo on 2017/5/16.
@@ -25,46 +22,305 @@ import java.nio.ByteBuffer;
  */
 
 @TargetApi(23)
-public class SunmiInnerScannerView extends RelativeLayout implements ImageReader.OnImageAvailableListener {
+public class SunmiInnerScannerView extends RelativeLayout implements CameraPreview.AnalysisSizeListener,
+        ScanPipeline.DecoderFactory, ScanPipeline.ResolutionListener, FrameRateGovernor.Listener,
+        LifecycleEventListener {
     private CameraPreview mPreview;
-    private ImageScanner scanner;
-    private SoundUtils soundUtils;
-    private AsyncDecode asyncDecode;
+    private ScannerConfig scannerConfig;
+    private volatile FeedbackDispatcher feedback;
+    private long vibrateMillis;
+    private long feedbackInterval = 200;
+    private final ScanPipeline pipeline;
+    private final ScanTimeline scanTimeline = new ScanTimeline();
+    // timeline of the most recently created view, kept after it unmounts
+    private static volatile ScanTimeline lastTimeline;
+    private final TiledScanner tiledScanner;
+    private int tileSize;
+    private int tileOverlap = 64;
+    private String enhancement = FrameEnhancers.MODE_OFF;
+    private int contrastClip = 1;
+    private int binarizeWindow = 31;
+    private int binarizeThreshold = 15;
     private static final int PADDING=10;
+    private int analysisWidth;
+    private String analysisResolution = "preview";
+    private long analysisPixelBudget;
+    private final Object resultLock = new Object();
+    private final ResultCache resultCache = new ResultCache();
+    private volatile long resultBatchWindow;
+    // frames decoded but not emitted yet; taken and acknowledged under resultLock
+    private final ResultQueue<WritableMap> resultQueue = new ResultQueue<>();
+    // guarded by resultLock
+    private boolean flushScheduled;
+    private final Runnable flushResults = new Runnable() {
+        @Override
+        public void run() {
+            flushResults();
+        }
+    };
+
+    private volatile long statsInterval;
+    private final Runnable emitStats = new Runnable() {
+        @Override
+        public void run() {
+            if (statsInterval <= 0)
+                return;
+            ((ReactContext) getContext()).getJSModule(RCTEventEmitter.class)
+                    .receiveEvent(getId(), EVENT_SCANNER_STATS, getScannerStats());
+            postDelayed(this, statsInterval);
+        }
+    };
+
+    public static final String EVENT_SCAN_RESULT = "topScanResult";
+    public static final String EVENT_SCANNER_STATS = "topScannerStats";
+    private long lastEmittedSequence;
+    private long staleResults;
     private long scanInterval;
-    private int mute;
+    private volatile int mute;
+    // whether JS wants the scanner running, and whether the host activity is in the foreground
+    private boolean active = true;
+    private boolean hostResumed = true;
+    // warm standby is opt-in, by default a paused view releases the camera as it always did
+    private String standbyMode = "release";
+    private long standbyTimeout = 60000;
+    private int xDensity = 1;
+    private int yDensity = 1;
+    // clockwise rotation from sensor frames to the display, refreshed on configuration changes
+    private int frameRotation;
 
 
     private static final String TAG = "SunmiInnerScannerView";
 
     public SunmiInnerScannerView(Context context) {
         super(context);
-        scanner = new ImageScanner();
-        mPreview = new CameraPreview(context, this);
-        try {
-            soundUtils = new SoundUtils(context, SoundUtils.RING_SOUND);
-            soundUtils.putSound(0, context.getResources().getIdentifier("beep", "raw", context.getPackageName()));
-        }catch(Exception e){
-            // ignore the error for the sound is not mandatory.
-            Log.e(TAG,e.getMessage(),e);
-        }
+        ScanTrace.milestone(scanTimeline, ScanTimeline.VIEW_CREATED);
+        lastTimeline = scanTimeline;
+        scannerConfig = new ScannerConfig();
+        tiledScanner = new TiledScanner(scannerConfig, TAG);
+        pipeline = new ScanPipeline(TAG, this);
+        pipeline.setPadding(PADDING);
+        pipeline.setErrorListener(new DecodeExecutor.ErrorListener() {
+            @Override
+            public void onDecodeError(RuntimeException e) {
+                Log.e(TAG, "Decoding failed", e);
+            }
+        });
+        pipeline.getFrameRateGovernor().setListener(this);
+        mPreview = new CameraPreview(context);
+        mPreview.setAnalysisSizeListener(this);
+        mPreview.setScanMetrics(pipeline.getMetrics());
+        mPreview.setScanTimeline(scanTimeline);
+        mPreview.setFrameSink(pipeline);
         this.addView(mPreview);
     }
 
     public void setXDensity(int desity) {
-        this.scanner.setConfig(0, Config.X_DENSITY, desity);
+        this.xDensity = desity;
+        applyDensity();
     }
 
     public void setYDensity(int desity) {
-        this.scanner.setConfig(0, Config.Y_DENSITY, desity);
+        this.yDensity = desity;
+        applyDensity();
+    }
+
+    /**
+     * Frames are decoded in sensor orientation. QR codes and 1D codes decode either way
+     * round, so instead of rotating every frame the display-relative scan densities are
+     * mapped onto the sensor axes.
+     */
+    private void applyDensity() {
+        boolean swapAxes = frameRotation == 90 || frameRotation == 270;
+        this.scannerConfig.set(0, Config.X_DENSITY, swapAxes ? yDensity : xDensity);
+        this.scannerConfig.set(0, Config.Y_DENSITY, swapAxes ? xDensity : yDensity);
+    }
+
+    private void updateFrameRotation() {
+        int rotation = mPreview.getFrameRotation();
+        if (rotation == frameRotation)
+            return;
+
+        frameRotation = rotation;
+        applyDensity();
+    }
+
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        updateFrameRotation();
     }
 
     public void setMutilScanEnable(int enable) {
-        this.scanner.setConfig(0, Config.ENABLE_MULTILESYMS, enable);
+        this.scannerConfig.set(0, Config.ENABLE_MULTILESYMS, enable);
     }
 
     public void setInverseEnable(int enable) {
-        this.scanner.setConfig(0, Config.ENABLE_INVERSE, enable);
+        this.scannerConfig.set(0, Config.ENABLE_INVERSE, enable);
+    }
+
+    /**
+     * Decodes each frame as overlapping tiles of the given edge length in parallel,
+     * for scenes with many codes. 0 scans the whole frame in one pass; smaller sizes
+     * than TiledScanner.MIN_TILE_SIZE are raised to it.
+     */
+    public void setTileSize(int tileSize) {
+        this.tileSize = tileSize;
+        tiledScanner.setTiling(tileSize, tileOverlap);
+    }
+
+    /**
+     * Pixels shared by neighbouring tiles, at least the size of the largest code and
+     * at most half the tile size; larger values are clamped.
+     */
+    public void setTileOverlap(int overlap) {
+        tileOverlap = overlap;
+        tiledScanner.setTiling(tileSize, overlap);
+    }
+
+    /**
+     * Turns on only the listed symbologies, e.g. ["QR", "CODE128"], so the decoder does
+     * not try the others on every frame. Null or an empty list enables all of them.
+     */
+    public void setSymbologies(ReadableArray names) {
+        // with no name recognised every symbology stays on, rather than none
+        this.scannerConfig.setEnabledSymbols(Symbologies.typesOf(names));
+    }
+
+    /**
+     * Chooses the analysis stream size for decoding: "low", "medium", "high", "adaptive"
+     * or "preview" to follow the preview size as before. An explicit analysisPixelBudget
+     * takes precedence over the preset.
+     */
+    public void setAnalysisResolution(String preset) {
+        analysisResolution = preset != null ? preset : "preview";
+        applyAnalysisResolution();
+    }
+
+    public void setAnalysisPixelBudget(long pixelBudget) {
+        analysisPixelBudget = pixelBudget;
+        applyAnalysisResolution();
+    }
+
+    private void applyAnalysisResolution() {
+        long budget;
+        switch (analysisResolution) {
+            case "low": budget = 640 * 480; break;
+            case "medium":
+            case "adaptive": budget = 1280 * 720; break;
+            case "high": budget = 1920 * 1080; break;
+            default: budget = 0;
+        }
+        if (analysisPixelBudget > 0)
+            budget = analysisPixelBudget;
+
+        // the governor needs the supported sizes, so it is created once the stream is configured
+        pipeline.setResolutionGovernor(null, null);
+        mPreview.setAnalysisPixelBudget(budget);
+        if (analysisWidth > 0)
+            createResolutionGovernor(budget);
+    }
+
+    private void createResolutionGovernor(long pixels) {
+        if ("adaptive".equals(analysisResolution) && analysisPixelBudget <= 0 && pipeline.getResolutionGovernor() == null)
+            pipeline.setResolutionGovernor(new AnalysisResolutionGovernor(mPreview.getAnalysisAreas(), pixels), this);
+    }
+
+    /**
+     * Sets the number of decode threads, each with its own ImageScanner, capped at the
+     * number of available cores.
+     */
+    public void setDecodeWorkers(int workers) {
+        pipeline.setWorkers(workers);
+    }
+
+    @Override
+    public DecodeExecutor.Decoder create(int workers) {
+        return new WorkerDecoder(workers);
+    }
+
+    /**
+     * Milliseconds without a decode or a scene change after which the camera drops to
+     * idleFps. 0 keeps the full frame rate.
+     */
+    public void setIdleTimeout(long timeoutMillis) {
+        pipeline.getFrameRateGovernor().setIdleTimeoutMillis(timeoutMillis);
+    }
+
+    public void setIdleFps(int fps) {
+        mPreview.setIdleFps(fps);
+    }
+
+    public void setIdleStride(int stride) {
+        pipeline.setIdleStride(stride);
+    }
+
+    public void setSceneChangeThreshold(int threshold) {
+        pipeline.getFrameRateGovernor().setSceneThreshold(threshold);
+    }
+
+    /**
+     * Frames below this sharpness score are not decoded. 0 decodes every frame.
+     */
+    public void setMinSharpness(int minSharpness) {
+        pipeline.getQualityGate().setMinSharpness(minSharpness);
+    }
+
+    /**
+     * Frames that differ from the last undecodable one by less than this are not decoded.
+     * 0 decodes every frame.
+     */
+    public void setUnchangedThreshold(int threshold) {
+        pipeline.getQualityGate().setUnchangedThreshold(threshold);
+    }
+
+    /**
+     * Second decode pass over frames that did not decode: "contrast" stretches the
+     * luma range, "binarize" thresholds against the local mean, "off" skips it.
+     */
+    public void setEnhancement(String mode) {
+        enhancement = mode != null ? mode : FrameEnhancers.MODE_OFF;
+        updateEnhancer();
+    }
+
+    public void setContrastClip(int percent) {
+        contrastClip = percent;
+        updateEnhancer();
+    }
+
+    public void setBinarizeWindow(int window) {
+        binarizeWindow = window;
+        updateEnhancer();
+    }
+
+    public void setBinarizeThreshold(int percent) {
+        binarizeThreshold = percent;
+        updateEnhancer();
+    }
+
+    private void updateEnhancer() {
+        // workers pick up the new factory with their next missed frame
+        pipeline.setEnhancer(FrameEnhancers.factory(enhancement, contrastClip, binarizeWindow, binarizeThreshold));
+    }
+
+    /**
+     * Number of consecutive failed frames of a steady scene averaged into one frame that
+     * is decoded once more, per decode worker. 0 turns fusion off.
+     */
+    public void setFusionFrames(int frames) {
+        pipeline.setFusionFrames(frames);
+    }
+
+    /**
+     * Mean luma difference from the running average above which a frame restarts fusion
+     * instead of blurring into it.
+     */
+    public void setFusionMaxDifference(int maxDifference) {
+        pipeline.setFusionMaxDifference(maxDifference);
+    }
+
+    @Override
+    public void onIdleChanged(boolean idle) {
+        mPreview.setIdle(idle);
     }
 
     public int isMute() {
@@ -73,6 +329,92 @@ public class SunmiInnerScannerView extends RelativeLayout implements ImageReader
 
     public void setMute(int mute) {
         this.mute = mute;
+        FeedbackDispatcher feedback = this.feedback;
+        if (feedback != null)
+            feedback.setSound(mute == 0);
+    }
+
+    /**
+     * Vibration length per scan in milliseconds, 0 turns vibration off.
+     */
+    public void setVibrate(long millis) {
+        vibrateMillis = millis;
+        FeedbackDispatcher feedback = this.feedback;
+        if (feedback != null)
+            feedback.setVibrateMillis(millis);
+    }
+
+    /**
+     * Minimum milliseconds between two beeps or vibrations during bursts of scans.
+     */
+    public void setFeedbackInterval(long millis) {
+        feedbackInterval = millis;
+        FeedbackDispatcher feedback = this.feedback;
+        if (feedback != null)
+            feedback.setMinIntervalMillis(millis);
+    }
+
+    public void setDuplicateWindow(long windowMillis) {
+        resultCache.setWindowMillis(windowMillis);
+    }
+
+    public void setDuplicateCacheSize(int capacity) {
+        resultCache.setCapacity(capacity);
+    }
+
+    public void setDuplicateEviction(String eviction) {
+        resultCache.setEviction(eviction);
+    }
+
+    /**
+     * Collects all results decoded within the given number of milliseconds into one
+     * event. 0 emits every decoded frame on its own.
+     */
+    public void setResultBatchWindow(long windowMillis) {
+        resultBatchWindow = windowMillis;
+    }
+
+    /**
+     * Number of decoded frames kept while JS has not acknowledged the previous event.
+     * 0 emits without waiting for acknowledgements and never drops results.
+     */
+    public void setResultQueueSize(int capacity) {
+        resultQueue.setCapacity(capacity);
+    }
+
+    /**
+     * What happens to a decoded frame when the result queue is full, one of the
+     * ResultQueue.OVERFLOW_* policies.
+     */
+    public void setResultOverflow(String overflow) {
+        resultQueue.setOverflow(overflow);
+    }
+
+    /**
+     * Called once JS has handled the result event with the given batch id; emits the
+     * results that were queued in the meantime.
+     */
+    public void acknowledgeResults(long batchId) {
+        boolean ready;
+        synchronized (resultLock) {
+            ready = resultQueue.acknowledge(batchId);
+        }
+        if (ready)
+            flushResults();
+    }
+
+    /**
+     * Emits getScannerStats() to onScannerStats every given number of milliseconds. 0 stops.
+     */
+    public void setStatsInterval(long intervalMillis) {
+        statsInterval = intervalMillis;
+        removeCallbacks(emitStats);
+        if (intervalMillis > 0 && isAttachedToWindow())
+            postDelayed(emitStats, intervalMillis);
+    }
+
+    public void clearDuplicateCache() {
+        resultCache.clear();
     }
 
     public long getScanInterval() {
@@ -81,11 +423,63 @@ public class SunmiInnerScannerView extends RelativeLayout implements ImageReader
 
     public void setScanInterval(long scanInterval) {
         this.scanInterval = scanInterval;
+        pipeline.setScanInterval(scanInterval);
     }
 
-    public void onResume() { mPreview.openCamera(); }
+    public void onResume() {
+        mPreview.exitStandby();
+    }
 
+    /**
+     * Puts the camera in standby as configured by standbyMode: "lowFps" keeps streaming
+     * at the lowest frame rate, "stop" stops the stream, both keep the session open for
+     * standbyTimeout ms. "release" closes the camera straight away.
+     */
     public void onPause() {
+        if ("release".equals(standbyMode))
+            mPreview.closeCamera();
+        else
+            mPreview.enterStandby("lowFps".equals(standbyMode), standbyTimeout);
+    }
+
+    /**
+     * Scanning pauses into standby while the view is inactive, e.g. on a screen that
+     * is navigated away from but stays mounted.
+     */
+    public void setActive(boolean active) {
+        this.active = active;
+        updateStandby();
+    }
+
+    public void setStandbyMode(String mode) {
+        standbyMode = mode != null ? mode : "release";
+    }
+
+    public void setStandbyTimeout(long timeoutMillis) {
+        standbyTimeout = timeoutMillis;
+    }
+
+    private void updateStandby() {
+        if (active && hostResumed)
+            onResume();
+        else
+            onPause();
+    }
+
+    @Override
+    public void onHostResume() {
+        hostResumed = true;
+        updateStandby();
+    }
+
+    @Override
+    public void onHostPause() {
+        hostResumed = false;
+        updateStandby();
+    }
+
+    @Override
+    public void onHostDestroy() {
         mPreview.closeCamera();
     }
 
@@ -104,6 +498,38 @@ public class SunmiInnerScannerView extends RelativeLayout implements ImageReader
         mPreview.closeCamera();
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        ((ReactContext) getContext()).addLifecycleEventListener(this);
+        Context context = getContext();
+        FeedbackDispatcher feedback = new FeedbackDispatcher(context,
+                context.getResources().getIdentifier("beep", "raw", context.getPackageName()),
+                AudioManager.STREAM_RING);
+        feedback.setSound(mute == 0);
+        feedback.setVibrateMillis(vibrateMillis);
+        feedback.setMinIntervalMillis(feedbackInterval);
+        this.feedback = feedback;
+        setStatsInterval(statsInterval);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        ((ReactContext) getContext()).removeLifecycleEventListener(this);
+        pipeline.stop();
+        if (feedback != null) {
+            feedback.release(getContext());
+            feedback = null;
+        }
+        removeCallbacks(flushResults);
+        removeCallbacks(emitStats);
+        synchronized (resultLock) {
+            resultQueue.clear();
+            flushScheduled = false;
+        }
+    }
+
     @Override
     public void onViewAdded(View child) {
         Log.w(TAG, "onViewAdded");
@@ -113,120 +539,304 @@ public class SunmiInnerScannerView extends RelativeLayout implements ImageReader
     }
 
     @Override
-    public void onImageAvailable(ImageReader reader) {
-        try (android.media.Image image = reader.acquireNextImage()) {
-            long now = System.currentTimeMillis();
-            if (asyncDecode == null ||
-                    (asyncDecode.isStoped() && now - asyncDecode.getEndTimeMillis() > this.scanInterval)) {
-                int width = reader.getWidth();
-                int height = reader.getHeight();
-
-                ByteBuffer buffer = image.getPlanes()[0].getBuffer();
-                byte[] data = new byte[buffer.remaining()];
-                buffer.get(data);
-
-                if (getScreenOrientation(getContext()) == Configuration.ORIENTATION_PORTRAIT) {
-                    byte[] rotatedData = new byte[data.length];
-                    for (int y = 0; y < height; y++) {
-                        for (int x = 0; x < width; x++)
-                            rotatedData[x * height + height - y - 1] = data[x + y * width];
-                    }
-
-                    int tmp = width;
-                    width = height;
-                    height = tmp;
-                    data = rotatedData;
-                }
-
-                Image source = new Image(width, height, "Y800");
-                Rect scanImageRect = new Rect(PADDING, PADDING, width - (2 * PADDING), height - (2 * PADDING));
-                source.setCrop(scanImageRect.top, scanImageRect.left,
-                        scanImageRect.width(), scanImageRect.height());
-                source.setData(data);// 填充数据
-                asyncDecode = new AsyncDecode();
-                asyncDecode.setMute(this.isMute() > 0);//静音
-                asyncDecode.execute(source);// 调用异步执行解码
-
+    public void onPixelBudgetChanged(final long pixelBudget) {
+        Log.d(TAG, "Adaptive analysis resolution: " + pixelBudget + " pixels");
+        mPreview.post(new Runnable() {
+            @Override
+            public void run() {
+                mPreview.setAnalysisPixelBudget(pixelBudget);
             }
-        } catch (Exception e) {
-            // TODO: Terrible hack. It is possible that this method is invoked after camera is released.
-            Log.e(TAG, e.toString(), e);
-        }
-    }
-
-    protected void sendEvent(ReactContext context, String eventName, WritableMap params){
-        context.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                .emit(eventName,params);
+        });
     }
 
-    private static int getScreenOrientation(Context context) {
-        WindowManager wm = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
-        DisplayMetrics displayMetrics = new DisplayMetrics();
-        wm.getDefaultDisplay().getMetrics(displayMetrics);
-
-        int orientation;
-        if (displayMetrics.widthPixels == displayMetrics.heightPixels) {
-            orientation = Configuration.ORIENTATION_SQUARE;
-        } else {
-            if (displayMetrics.widthPixels < displayMetrics.widthPixels) {
-                orientation = Configuration.ORIENTATION_PORTRAIT;
-            } else {
-                orientation = Configuration.ORIENTATION_LANDSCAPE;
+    private class WorkerDecoder implements DecodeExecutor.Decoder {
+        private final ConfiguredScanner[] scanners;
+        // one reusable wrapper per worker, pointed at whichever frame it decodes
+        private final Image[] images;
+
+        WorkerDecoder(int workers) {
+            scanners = new ConfiguredScanner[workers];
+            images = new Image[workers];
+            for (int i = 0; i < workers; i++) {
+                scanners[i] = new ConfiguredScanner(scannerConfig);
+                images[i] = new Image(0, 0, "Y800");
             }
         }
-        return orientation;
-    }
 
-    private class AsyncDecode extends AsyncTask<Image, Void, Void> {
-        private boolean stoped = true;
-        private  WritableArray array;
-        private long endTimeMillis;
-        private boolean mute;
         @Override
-        protected Void doInBackground(Image... params) {
-            stoped = false;
-            Image src_data = params[0];// 获取灰度数据
-
-            // 解码，返回值为0代表失败，>0表示成功
-            int nsyms = scanner.scanImage(src_data);
-            if (nsyms != 0) {
-                if(!this.mute) {
-                    soundUtils.playSound(0, SoundUtils.SINGLE_PLAY);// 解码成功播放提示音
+        public boolean decode(FramePool.Frame frame, int worker) {
+            List<String[]> symbols;
+            if (tiledScanner.isEnabled()) {
+                ScanTrace.begin("SunmiScanner scanTiles");
+                long start = System.nanoTime();
+                try {
+                    symbols = tiledScanner.scan(frame);
+                } finally {
+                    frame.scanNanos = System.nanoTime() - start;
+                    ScanTrace.end();
+                }
+                ScanTrace.milestone(scanTimeline, ScanTimeline.FIRST_DECODE);
+                if (symbols.isEmpty())
+                    return false;
+            } else {
+                ConfiguredScanner scanner = scanners[worker];
+                Image image = images[worker];
+                image.setSize(frame.width, frame.height);
+                image.setCrop(0, 0, frame.width, frame.height);
+                image.setData(frame.data);
+                // 解码，返回值为0代表失败，>0表示成功
+                int nsyms;
+                ScanTrace.begin("SunmiScanner scanImage");
+                long start = System.nanoTime();
+                try {
+                    nsyms = scanner.scanImage(image);
+                } finally {
+                    frame.scanNanos = System.nanoTime() - start;
+                    ScanTrace.end();
                 }
-                array = new WritableNativeArray();
+                ScanTrace.milestone(scanTimeline, ScanTimeline.FIRST_DECODE);
+                if (nsyms == 0)
+                    return false;
+
+                symbols = new ArrayList<>();
                 SymbolSet syms = scanner.getResults();// 获取解码结果
-                for (Symbol sym : syms) {
+                for (Symbol sym : syms)
+                    symbols.add(new String[]{sym.getSymbolName(), sym.getResult()});
+            }
+            if (publish(frame, symbols)) {
+                // after the result is on its way, so no audio work delays it
+                FeedbackDispatcher feedback = SunmiInnerScannerView.this.feedback;
+                if (feedback != null)
+                    feedback.dispatch();// 解码成功播放提示音
+            }
+            return true;
+        }
+
+        /**
+         * Emits the symbols of the frame that are not duplicates.
+         *
+         * @return whether the result queue took the frame, so JS will receive it
+         */
+        private boolean publish(FramePool.Frame frame, List<String[]> symbols) {
+            boolean accepted;
+            boolean flush = false;
+            synchronized (resultLock) {
+                // a newer frame already produced a result on another worker
+                if (frame.sequence < lastEmittedSequence) {
+                    staleResults++;
+                    return false;
+                }
+                lastEmittedSequence = frame.sequence;
+
+                WritableArray array = null;
+                StringBuilder key = new StringBuilder();
+                long now = System.nanoTime();
+                long start = now;
+                for (String[] symbol : symbols) {
+                    String symbolName = symbol[0];
+                    String result = symbol[1];
+                    // repeats within the duplicate window never reach the bridge or the speaker
+                    if (resultCache.isDuplicate(symbolName, result, now))
+                        continue;
+                    if (array == null)
+                        array = new WritableNativeArray();
                     WritableMap r = new WritableNativeMap();
-                    r.putString("symbolName",sym.getSymbolName());
-                    r.putString("result",sym.getResult());
+                    r.putString("symbolName",symbolName);
+                    r.putString("result",result);
                     array.pushMap(r);
+                    key.append(symbolName).append('\n').append(result).append('\n');
                 }
+                if (array == null)
+                    return false;
+
+                WritableMap frameResult = new WritableNativeMap();
+                frameResult.putDouble("frameId", frame.sequence);
+                frameResult.putDouble("timestamp", System.currentTimeMillis());
+                frameResult.putArray("result",array);
+                pipeline.getMetrics().record(ScanMetrics.STAGE_MARSHAL, System.nanoTime() - start);
+                // a frame the full queue turns away gets no beep either
+                accepted = resultQueue.offer(key.toString(), frameResult);
+                if (accepted)
+                    flush = scheduleFlush();
             }
-
-            return null;
+            // the bridge call must not hold up other workers or acknowledgements on resultLock
+            if (flush)
+                flushResults();
+            return accepted;
         }
+    }
 
-        @Override
-        protected void onPostExecute(Void result) {
-            super.onPostExecute(result);
-            stoped = true;
-            if(array!=null){
-                WritableMap map = new WritableNativeMap();
-                map.putArray("result",array);
-                sendEvent((ReactContext)getContext(),TAG+".RESULT",map);
+    @Override
+    public void onAnalysisSizeChosen(final int width, final int height) {
+        // the frame buffers must fit before the first frame arrives, the rest can wait for the UI thread
+        pipeline.configure(width, height);
+        post(new Runnable() {
+            @Override
+            public void run() {
+                analysisWidth = width;
+                createResolutionGovernor((long) width * height);
+                updateFrameRotation();
             }
-            endTimeMillis = System.currentTimeMillis();
+        });
+    }
+
+    public WritableMap getFramePoolStats() {
+        FramePool framePool = pipeline.getDecodeExecutor().getFramePool();
+        WritableMap map = new WritableNativeMap();
+        map.putInt("size", framePool.getSize());
+        map.putDouble("allocations", framePool.getAllocationCount());
+        map.putDouble("acquired", framePool.getAcquiredCount());
+        map.putDouble("exhausted", framePool.getExhaustedCount());
+        return map;
+    }
+
+    public WritableMap getDecodeStats() {
+        DecodeExecutor decodeExecutor = pipeline.getDecodeExecutor();
+        WritableMap map = new WritableNativeMap();
+        map.putDouble("offered", decodeExecutor.getOfferedCount());
+        map.putDouble("overwritten", decodeExecutor.getOverwrittenCount());
+        map.putDouble("decoded", decodeExecutor.getDecodedCount());
+        map.putDouble("skipped", decodeExecutor.getSkippedCount());
+        map.putInt("workers", decodeExecutor.getWorkerCount());
+        synchronized (resultLock) {
+            map.putDouble("stale", staleResults);
         }
+        map.putDouble("duplicates", resultCache.getSuppressedCount());
+        map.putDouble("tiles", tiledScanner.getTilesDecoded());
+        return map;
+    }
 
-        public boolean isStoped() {
-            return stoped;
+    /**
+     * Counters, per-stage latency percentiles in microseconds, and the frame pool and
+     * decoder statistics.
+     */
+    public WritableMap getScannerStats() {
+        ScanMetrics scanMetrics = pipeline.getMetrics();
+        WritableMap map = new WritableNativeMap();
+        map.putDouble("framesReceived", scanMetrics.getFramesReceived());
+        map.putDouble("framesDropped", scanMetrics.getFramesDropped());
+        map.putDouble("captureFailures", scanMetrics.getCaptureFailures());
+        map.putDouble("decodeAttempts", scanMetrics.getDecodeAttempts());
+        map.putDouble("decodeHits", scanMetrics.getDecodeHits());
+        map.putDouble("decodeErrors", scanMetrics.getDecodeErrors());
+        map.putDouble("hitRate", scanMetrics.getHitRate());
+        map.putDouble("hitRateWithoutEnhancement", scanMetrics.getHitRateWithoutEnhancement());
+        map.putDouble("enhancedAttempts", scanMetrics.getEnhancedAttempts());
+        map.putDouble("enhancedHits", scanMetrics.getEnhancedHits());
+        map.putDouble("fusedAttempts", scanMetrics.getFusedAttempts());
+        map.putDouble("fusedHits", scanMetrics.getFusedHits());
+        map.putDouble("fusionResets", pipeline.getFusionResetCount());
+        FrameRateGovernor frameRateGovernor = pipeline.getFrameRateGovernor();
+        map.putBoolean("idle", frameRateGovernor.isIdle());
+        map.putDouble("idleTransitions", frameRateGovernor.getIdleTransitions());
+        map.putDouble("idleSkipped", pipeline.getIdleSkippedCount());
+        FrameQualityGate qualityGate = pipeline.getQualityGate();
+        map.putInt("sharpness", qualityGate.getLastSharpness());
+        map.putDouble("blurrySkipped", qualityGate.getBlurrySkippedCount());
+        map.putDouble("unchangedSkipped", qualityGate.getUnchangedSkippedCount());
+
+        WritableMap stages = new WritableNativeMap();
+        for (int i = 0; i < ScanMetrics.STAGE_NAMES.length; i++) {
+            LatencyHistogram histogram = scanMetrics.getStage(i);
+            WritableMap stage = new WritableNativeMap();
+            stage.putDouble("count", histogram.getCount());
+            stage.putDouble("mean", histogram.getMeanMicros());
+            stage.putDouble("p50", histogram.getPercentileMicros(50));
+            stage.putDouble("p95", histogram.getPercentileMicros(95));
+            stage.putDouble("p99", histogram.getPercentileMicros(99));
+            stages.putMap(ScanMetrics.STAGE_NAMES[i], stage);
         }
-        public long getEndTimeMillis(){
-            return this.endTimeMillis;
+        map.putMap("stages", stages);
+        map.putMap("framePool", getFramePoolStats());
+        map.putMap("decoder", getDecodeStats());
+        map.putMap("resultQueue", getResultQueueStats());
+        CameraService cameraService = CameraService.getInstance();
+        WritableMap camera = new WritableNativeMap();
+        camera.putDouble("opens", cameraService.getOpenCount());
+        camera.putDouble("takeovers", cameraService.getTakeoverCount());
+        camera.putInt("previews", cameraService.getClientCount());
+        map.putMap("camera", camera);
+        return map;
+    }
+
+    /**
+     * Milestones of the most recently created scanner view, in milliseconds since the
+     * view was created, or null before any view was created. Milestones not reached
+     * are left out.
+     */
+    public static WritableMap getLastScanTimeline() {
+        ScanTimeline timeline = lastTimeline;
+        if (timeline == null)
+            return null;
+
+        WritableMap map = new WritableNativeMap();
+        for (int i = 0; i < ScanTimeline.getMilestoneCount(); i++) {
+            long elapsed = timeline.getElapsedNanos(i);
+            if (elapsed >= 0)
+                map.putDouble(ScanTimeline.getMilestoneName(i), elapsed / 1e6);
         }
+        return map;
+    }
 
-        public void setMute(boolean mute) {
-            this.mute = mute;
+    public WritableMap getResultQueueStats() {
+        WritableMap map = new WritableNativeMap();
+        map.putInt("depth", resultQueue.getDepth());
+        map.putDouble("dropped", resultQueue.getDroppedCount());
+        map.putDouble("merged", resultQueue.getMergedCount());
+        map.putBoolean("awaitingAck", resultQueue.isAwaitingAck());
+        return map;
+    }
+
+    public void resetScannerStats() {
+        pipeline.getMetrics().reset();
+    }
+
+    /**
+     * After a frame result was queued: emits it straight away, or collects it into the
+     * current batch when a batch window is set. Either way it waits in the result queue
+     * while the previous event is unacknowledged. Called with resultLock held.
+     *
+     * @return true if the caller should flush the results once it released resultLock
+     */
+    private boolean scheduleFlush() {
+        if (resultBatchWindow <= 0)
+            return true;
+        if (!flushScheduled) {
+            flushScheduled = true;
+            postDelayed(flushResults, resultBatchWindow);
+        }
+        return false;
+    }
+
+    private void flushResults() {
+        List<WritableMap> batch;
+        long batchId;
+        synchronized (resultLock) {
+            flushScheduled = false;
+            batch = resultQueue.takeBatch();
+            batchId = resultQueue.getBatchId();
+        }
+        if (batch == null)
+            return;
+
+        long start = System.nanoTime();
+        WritableArray frames = new WritableNativeArray();
+        for (WritableMap frameResult : batch)
+            frames.pushMap(frameResult);
+        WritableMap event = new WritableNativeMap();
+        event.putDouble("batchId", batchId);
+        event.putArray("frames", frames);
+        ScanTrace.begin("SunmiScanner emit");
+        try {
+            ((ReactContext) getContext()).getJSModule(RCTEventEmitter.class)
+                    .receiveEvent(getId(), EVENT_SCAN_RESULT, event);
+        } finally {
+            ScanTrace.end();
+        }
+        pipeline.getMetrics().record(ScanMetrics.STAGE_EMIT, System.nanoTime() - start);
+        if (!scanTimeline.has(ScanTimeline.FIRST_RESULT)) {
+            ScanTrace.milestone(scanTimeline, ScanTimeline.FIRST_RESULT);
+            Log.i(TAG, "First scan: " + scanTimeline);
         }
     }
-}
\ No newline at end of file
+}
@@ -2,6 +2,11 @@ package com.sunmi.scanner;
 
 import android.util.Log;
 import android.view.View;
+
+import java.util.Map;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.common.MapBuilder;
 import com.facebook.react.uimanager.ThemedReactContext;
 import com.facebook.react.uimanager.ViewGroupManager;
 import com.facebook.react.uimanager.annotations.ReactProp;
@@ -22,6 +27,13 @@ public class SunmiInnerScannerViewManager extends ViewGroupManager<SunmiInnerSca
         return new SunmiInnerScannerView(reactContext);
     }
 
+    @Override
+    public Map<String, Object> getExportedCustomDirectEventTypeConstants() {
+        return MapBuilder.<String, Object>of(
+                SunmiInnerScannerView.EVENT_SCAN_RESULT, MapBuilder.of("registrationName", "onScanResult"),
+                SunmiInnerScannerView.EVENT_SCANNER_STATS, MapBuilder.of("registrationName", "onScannerStatsEvent"));
+    }
+
     @ReactProp(name="xDensity")
     public void setXDensity(SunmiInnerScannerView view,final int desity){
         view.setXDensity(desity);
@@ -42,14 +54,106 @@ public class SunmiInnerScannerViewManager extends ViewGroupManager<SunmiInnerSca
         view.setInverseEnable(enable);
     }
 
+    @ReactProp(name="symbologies")
+    public void setSymbologies(SunmiInnerScannerView view, ReadableArray symbologies){
+        view.setSymbologies(symbologies);
+    }
+
+    @ReactProp(name = "tileSize")
+    public void setTileSize(SunmiInnerScannerView view, int tileSize){view.setTileSize(tileSize);}
+
+    @ReactProp(name = "tileOverlap", defaultInt = 64)
+    public void setTileOverlap(SunmiInnerScannerView view, int overlap){view.setTileOverlap(overlap);}
+
+    @ReactProp(name = "enhancement")
+    public void setEnhancement(SunmiInnerScannerView view, String mode){view.setEnhancement(mode);}
+
+    @ReactProp(name = "contrastClip", defaultInt = 1)
+    public void setContrastClip(SunmiInnerScannerView view, int percent){view.setContrastClip(percent);}
+
+    @ReactProp(name = "binarizeWindow", defaultInt = 31)
+    public void setBinarizeWindow(SunmiInnerScannerView view, int window){view.setBinarizeWindow(window);}
+
+    @ReactProp(name = "binarizeThreshold", defaultInt = 15)
+    public void setBinarizeThreshold(SunmiInnerScannerView view, int percent){view.setBinarizeThreshold(percent);}
+
+    @ReactProp(name = "fusionFrames")
+    public void setFusionFrames(SunmiInnerScannerView view, int frames){view.setFusionFrames(frames);}
+
+    @ReactProp(name = "fusionMaxDifference", defaultInt = 8)
+    public void setFusionMaxDifference(SunmiInnerScannerView view, int maxDifference){view.setFusionMaxDifference(maxDifference);}
+
     @ReactProp(name="scanInterval")
     public void setScanInterval(SunmiInnerScannerView view, int interval){
         view.setScanInterval(Long.valueOf(interval));
     }
 
+    @ReactProp(name = "decodeWorkers", defaultInt = 1)
+    public void setDecodeWorkers(SunmiInnerScannerView view, int workers){view.setDecodeWorkers(workers);}
+
+    @ReactProp(name = "analysisResolution")
+    public void setAnalysisResolution(SunmiInnerScannerView view, String preset){view.setAnalysisResolution(preset);}
+
+    @ReactProp(name = "analysisPixelBudget")
+    public void setAnalysisPixelBudget(SunmiInnerScannerView view, int pixels){view.setAnalysisPixelBudget(pixels);}
+
+    @ReactProp(name = "duplicateWindow")
+    public void setDuplicateWindow(SunmiInnerScannerView view, int windowMillis){view.setDuplicateWindow(windowMillis);}
+
+    @ReactProp(name = "duplicateCacheSize", defaultInt = 64)
+    public void setDuplicateCacheSize(SunmiInnerScannerView view, int capacity){view.setDuplicateCacheSize(capacity);}
+
+    @ReactProp(name = "duplicateEviction")
+    public void setDuplicateEviction(SunmiInnerScannerView view, String eviction){view.setDuplicateEviction(eviction);}
+
+    @ReactProp(name = "resultBatchWindow")
+    public void setResultBatchWindow(SunmiInnerScannerView view, int windowMillis){view.setResultBatchWindow(windowMillis);}
+
+    @ReactProp(name = "resultQueueSize", defaultInt = 16)
+    public void setResultQueueSize(SunmiInnerScannerView view, int capacity){view.setResultQueueSize(capacity);}
+
+    @ReactProp(name = "resultOverflow")
+    public void setResultOverflow(SunmiInnerScannerView view, String overflow){view.setResultOverflow(overflow);}
+
+    @ReactProp(name = "statsInterval")
+    public void setStatsInterval(SunmiInnerScannerView view, int intervalMillis){view.setStatsInterval(intervalMillis);}
+
+    @ReactProp(name = "active", defaultBoolean = true)
+    public void setActive(SunmiInnerScannerView view, boolean active){view.setActive(active);}
+
+    @ReactProp(name = "standbyMode")
+    public void setStandbyMode(SunmiInnerScannerView view, String mode){view.setStandbyMode(mode);}
+
+    @ReactProp(name = "standbyTimeout", defaultInt = 60000)
+    public void setStandbyTimeout(SunmiInnerScannerView view, int timeoutMillis){view.setStandbyTimeout(timeoutMillis);}
+
+    @ReactProp(name = "idleTimeout")
+    public void setIdleTimeout(SunmiInnerScannerView view, int timeoutMillis){view.setIdleTimeout(timeoutMillis);}
+
+    @ReactProp(name = "idleFps", defaultInt = 10)
+    public void setIdleFps(SunmiInnerScannerView view, int fps){view.setIdleFps(fps);}
+
+    @ReactProp(name = "idleStride", defaultInt = 1)
+    public void setIdleStride(SunmiInnerScannerView view, int stride){view.setIdleStride(stride);}
+
+    @ReactProp(name = "sceneChangeThreshold", defaultInt = 8)
+    public void setSceneChangeThreshold(SunmiInnerScannerView view, int threshold){view.setSceneChangeThreshold(threshold);}
+
+    @ReactProp(name = "minSharpness")
+    public void setMinSharpness(SunmiInnerScannerView view, int minSharpness){view.setMinSharpness(minSharpness);}
+
+    @ReactProp(name = "unchangedThreshold")
+    public void setUnchangedThreshold(SunmiInnerScannerView view, int threshold){view.setUnchangedThreshold(threshold);}
+
     @ReactProp(name = "mute")
     public void setMute(SunmiInnerScannerView view, int mute){view.setMute(mute);}
 
+    @ReactProp(name = "vibrate")
+    public void setVibrate(SunmiInnerScannerView view, int millis){view.setVibrate(millis);}
+
+    @ReactProp(name = "feedbackInterval", defaultInt = 200)
+    public void setFeedbackInterval(SunmiInnerScannerView view, int millis){view.setFeedbackInterval(millis);}
+
     @ReactProp(name = "torch")
     public void setTorch(SunmiInnerScannerView view, boolean torch){view.setFlash(torch);}
 
@@ -0,0 +1,71 @@
+package com.sunmi.scanner;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.sunmi.scan.Symbol;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maps the symbology names accepted by the symbologies prop onto decoder symbol types.
+ */
+public final class Symbologies {
+    private static final String TAG = "Symbologies";
+    private static final Map<String, Integer> TYPES = new HashMap<>();
+
+    static {
+        TYPES.put("EAN8", Symbol.EAN8);
+        TYPES.put("UPCE", Symbol.UPCE);
+        TYPES.put("ISBN10", Symbol.ISBN10);
+        TYPES.put("UPCA", Symbol.UPCA);
+        TYPES.put("EAN13", Symbol.EAN13);
+        TYPES.put("ISBN13", Symbol.ISBN13);
+        TYPES.put("I25", Symbol.I25);
+        TYPES.put("DATABAR", Symbol.DATABAR);
+        TYPES.put("DATABAREXP", Symbol.DATABAR_EXP);
+        TYPES.put("CODABAR", Symbol.CODABAR);
+        TYPES.put("CODE39", Symbol.CODE39);
+        TYPES.put("PDF417", Symbol.PDF417);
+        TYPES.put("QR", Symbol.QRCODE);
+        TYPES.put("QRCODE", Symbol.QRCODE);
+        TYPES.put("AZTEC", Symbol.AZTEC);
+        TYPES.put("DATAMATRIX", Symbol.DataMatrix);
+        TYPES.put("CODE93", Symbol.CODE93);
+        TYPES.put("CODE128", Symbol.CODE128);
+    }
+
+    private Symbologies() {
+    }
+
+    /**
+     * Symbol type for a name such as "QR", "qrcode", "EAN-13" or "Code_128", or
+     * Symbol.NONE if it is not known.
+     */
+    public static int typeOf(String name) {
+        String key = name.toUpperCase(Locale.US).replaceAll("[-_ ]", "");
+        Integer type = TYPES.get(key);
+        return type != null ? type : Symbol.NONE;
+    }
+
+    /**
+     * Symbol types for a list of names, skipping and logging unknown ones. Null gives
+     * an empty list.
+     */
+    public static int[] typesOf(ReadableArray names) {
+        int count = names != null ? names.size() : 0;
+        int[] types = new int[count];
+        int known = 0;
+        for (int i = 0; i < count; i++) {
+            int type = typeOf(names.getString(i));
+            if (type == Symbol.NONE)
+                Log.w(TAG, "Unknown symbology: " + names.getString(i));
+            else
+                types[known++] = type;
+        }
+        return Arrays.copyOf(types, known);
+    }
+}
@@ -0,0 +1,153 @@
+package com.sunmi.scanner;
+
+import android.util.Log;
+
+import com.sunmi.scan.Image;
+import com.sunmi.scan.Symbol;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes a frame as overlapping tiles in parallel, each on its own ImageScanner.
+ *
+ * Tiles are crops of the shared frame buffer, so nothing is copied. A frame takes
+ * about as long as its slowest tile instead of one pass over the whole frame, which
+ * pays off in dense scenes with many codes. Codes found in two overlapping tiles are
+ * reported once.
+ */
+public class TiledScanner {
+    private static final String TAG = "TiledScanner";
+    public static final int MIN_TILE_SIZE = 64;
+
+    private static class TileScanner {
+        final ConfiguredScanner scanner;
+        final Image image = new Image(0, 0, "Y800");
+
+        TileScanner(ScannerConfig config) {
+            scanner = new ConfiguredScanner(config);
+        }
+    }
+
+    private final ScannerConfig config;
+    private final ThreadPoolExecutor executor;
+    // at most one scanner per tile thread is ever in use at a time
+    private final ConcurrentLinkedQueue<TileScanner> scanners = new ConcurrentLinkedQueue<>();
+    private final AtomicLong tilesDecoded = new AtomicLong();
+
+    private volatile int tileSize;
+    private volatile int overlap;
+
+    public TiledScanner(ScannerConfig config, final String name) {
+        this.config = config;
+        int threads = Runtime.getRuntime().availableProcessors();
+        executor = new ThreadPoolExecutor(threads, threads, 5, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, name + " tile " + count.getAndIncrement());
+            }
+        });
+        // idle tile threads go away when tiling is not used
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Tile edge length in pixels, 0 turns tiling off. Neighbouring tiles share overlap
+     * pixels, which should be at least the size of the largest code.
+     *
+     * Tiles are at least MIN_TILE_SIZE pixels and share at most half their edge, so a
+     * frame never breaks up into more than a few hundred tiles; larger overlaps are
+     * clamped with a warning.
+     */
+    public void setTiling(int tileSize, int overlap) {
+        if (tileSize > 0 && tileSize < MIN_TILE_SIZE) {
+            Log.w(TAG, "tileSize " + tileSize + " raised to " + MIN_TILE_SIZE);
+            tileSize = MIN_TILE_SIZE;
+        }
+        if (tileSize > 0 && overlap > tileSize / 2) {
+            Log.w(TAG, "tileOverlap " + overlap + " clamped to " + tileSize / 2 + " for tileSize " + tileSize);
+            overlap = tileSize / 2;
+        }
+        this.tileSize = tileSize;
+        this.overlap = Math.max(0, overlap);
+    }
+
+    public boolean isEnabled() {
+        return tileSize > 0;
+    }
+
+    /**
+     * Decodes all tiles of the frame and returns the distinct (symbolName, result)
+     * pairs found, in tile order. Called on a decode thread, which waits for the tiles.
+     */
+    public List<String[]> scan(final FramePool.Frame frame) {
+        final int[] rects = TileLayout.compute(frame.width, frame.height, tileSize, overlap);
+        List<Future<List<String[]>>> futures = new ArrayList<>(rects.length / 4);
+        for (int i = 0; i < rects.length; i += 4) {
+            final int tile = i;
+            futures.add(executor.submit(new Callable<List<String[]>>() {
+                @Override
+                public List<String[]> call() {
+                    return scanTile(frame, rects[tile], rects[tile + 1], rects[tile + 2], rects[tile + 3]);
+                }
+            }));
+        }
+
+        LinkedHashMap<String, String[]> merged = new LinkedHashMap<>();
+        for (Future<List<String[]>> future : futures) {
+            try {
+                for (String[] symbol : future.get())
+                    merged.put(symbol[0] + '\n' + symbol[1], symbol);
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Tile decode failed", e.getCause());
+            } catch (InterruptedException e) {
+                // the decode thread is being stopped, the frame is abandoned
+                for (Future<List<String[]>> pending : futures)
+                    pending.cancel(false);
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    private List<String[]> scanTile(FramePool.Frame frame, int left, int top, int width, int height) {
+        TileScanner tileScanner = scanners.poll();
+        if (tileScanner == null)
+            tileScanner = new TileScanner(config);
+        try {
+            Image image = tileScanner.image;
+            image.setSize(frame.width, frame.height);
+            image.setCrop(left, top, width, height);
+            image.setData(frame.data);
+            List<String[]> symbols = new ArrayList<>();
+            if (tileScanner.scanner.scanImage(image) != 0) {
+                // symbols belong to the scanner and are only valid until its next scan
+                for (Symbol sym : tileScanner.scanner.getResults())
+                    symbols.add(new String[]{sym.getSymbolName(), sym.getResult()});
+            }
+            tilesDecoded.incrementAndGet();
+            return symbols;
+        } finally {
+            scanners.offer(tileScanner);
+        }
+    }
+
+    public long getTilesDecoded() {
+        return tilesDecoded.get();
+    }
+}
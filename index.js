@@ -1,30 +1,68 @@
 import React,{Component} from 'react';
 import { NativeModules,
+    DeviceEventEmitter,
     requireNativeComponent,
     View,
-    DeviceEventEmitter
+    findNodeHandle
 } from 'react-native';
 import PropTypes from 'prop-types'
 
 const SunmiInnerScanner = NativeModules.SunmiInnerScanner;
 export default SunmiInnerScanner;
+
+let nextBatchId = 1;
+
+/**
+ * Decodes barcodes from stored images (file paths or content:// / file:// URIs) off
+ * the UI thread. onResult({index, uri, result}) or onResult({index, uri, error}) is
+ * called as each image finishes; resolves with {images, decoded, failed}.
+ */
+export function decodeImages(sources, options = {}, onResult) {
+    const batchId = nextBatchId++;
+    const subscription = DeviceEventEmitter.addListener('SunmiScannerBulkResult', (event) => {
+        if (event.batchId === batchId && onResult) {
+            onResult(event);
+        }
+    });
+    return SunmiInnerScanner.decodeImages(sources, {...options, batchId})
+        .finally(() => subscription.remove());
+}
 export class SunmiScannerView extends Component {
 
-    componentWillMount() {
-        if (this.props.onCodeScan){
-            this.cameraBarCodeReadListener = DeviceEventEmitter.addListener('SunmiInnerScannerView.RESULT',
-                (data)=> {
-                this.props.onCodeScan(data.result || []);
-            });
+    _onScanResult = (event) => {
+        const {frames = [], batchId} = event.nativeEvent;
+        let handled;
+        try {
+            if (this.props.onCodeScan) {
+                const result = [];
+                frames.forEach((frame) => result.push(...frame.result));
+                handled = this.props.onCodeScan(result, frames);
+            }
+        } finally {
+            // the next batch is only sent once this one is acknowledged; an async
+            // onCodeScan holds it back until its promise settles
+            const ack = () => this._acknowledgeResults(batchId);
+            if (handled && typeof handled.then === 'function') {
+                handled.then(ack, ack);
+            } else {
+                ack();
+            }
         }
-    }
+    };
 
-    componentWillUnmount() {
-        if (this.cameraBarCodeReadListener) {
-            this.cameraBarCodeReadListener.remove();
+    _acknowledgeResults(batchId) {
+        const viewTag = findNodeHandle(this);
+        if (batchId !== undefined && viewTag) {
+            SunmiInnerScanner.acknowledgeResults(viewTag, batchId);
         }
     }
 
+    _onScannerStats = (event) => {
+        if (this.props.onScannerStats) {
+            this.props.onScannerStats(event.nativeEvent);
+        }
+    };
+
     static propTypes = {
         ...View.propTypes,
         xDensity: PropTypes.number,
@@ -35,8 +73,39 @@ export class SunmiScannerView extends Component {
             PropTypes.number
         ]),
         onCodeScan: PropTypes.func,
+        symbologies: PropTypes.arrayOf(PropTypes.string),
+        tileSize: PropTypes.number,
+        tileOverlap: PropTypes.number,
+        enhancement: PropTypes.oneOf(['off', 'contrast', 'binarize']),
+        contrastClip: PropTypes.number,
+        binarizeWindow: PropTypes.number,
+        binarizeThreshold: PropTypes.number,
+        fusionFrames: PropTypes.number,
+        fusionMaxDifference: PropTypes.number,
         scanInterval: PropTypes.number,
+        decodeWorkers: PropTypes.number,
+        analysisResolution: PropTypes.oneOf(['preview', 'low', 'medium', 'high', 'adaptive']),
+        analysisPixelBudget: PropTypes.number,
+        duplicateWindow: PropTypes.number,
+        duplicateCacheSize: PropTypes.number,
+        duplicateEviction: PropTypes.oneOf(['lru', 'fifo']),
+        resultBatchWindow: PropTypes.number,
+        resultQueueSize: PropTypes.number,
+        resultOverflow: PropTypes.oneOf(['dropOldest', 'dropNewest', 'merge']),
+        statsInterval: PropTypes.number,
+        onScannerStats: PropTypes.func,
+        active: PropTypes.bool,
+        standbyMode: PropTypes.oneOf(['lowFps', 'stop', 'release']),
+        standbyTimeout: PropTypes.number,
+        idleTimeout: PropTypes.number,
+        idleFps: PropTypes.number,
+        idleStride: PropTypes.number,
+        sceneChangeThreshold: PropTypes.number,
+        minSharpness: PropTypes.number,
+        unchangedThreshold: PropTypes.number,
         mute: PropTypes.number,
+        vibrate: PropTypes.number,
+        feedbackInterval: PropTypes.number,
         autoFocus: PropTypes.bool,
         focus: PropTypes.number,
         torch: PropTypes.bool
@@ -50,14 +119,65 @@ export class SunmiScannerView extends Component {
             console.log(result);
         },
         scanInterval:1000,
+        decodeWorkers:1,
+        tileSize:0,
+        tileOverlap:64,
+        enhancement:'off',
+        contrastClip:1,
+        binarizeWindow:31,
+        binarizeThreshold:15,
+        fusionFrames:0,
+        fusionMaxDifference:8,
+        analysisResolution:'preview',
+        duplicateWindow:0,
+        duplicateCacheSize:64,
+        duplicateEviction:'lru',
+        resultBatchWindow:0,
+        resultQueueSize:16,
+        resultOverflow:'dropOldest',
+        statsInterval:0,
+        active:true,
+        standbyMode:'release',
+        standbyTimeout:60000,
+        idleTimeout:0,
+        idleFps:10,
+        idleStride:1,
+        sceneChangeThreshold:8,
+        minSharpness:0,
+        unchangedThreshold:0,
         mute:0,
+        vibrate:0,
+        feedbackInterval:200,
         focus:0,
         autoFocus:false,
         torch:false
     }
 
+    getScannerStats() {
+        return SunmiInnerScanner.getScannerStats(findNodeHandle(this));
+    }
+
+    resetScannerStats() {
+        return SunmiInnerScanner.resetScannerStats(findNodeHandle(this));
+    }
+
+    clearDuplicateCache() {
+        return SunmiInnerScanner.clearDuplicateCache(findNodeHandle(this));
+    }
+
+    getFramePoolStats() {
+        return SunmiInnerScanner.getFramePoolStats(findNodeHandle(this));
+    }
+
+    getDecodeStats() {
+        return SunmiInnerScanner.getDecodeStats(findNodeHandle(this));
+    }
+
     render() {
-        return <SunmiScanner {...this.props} />;
+        return <SunmiScanner {...this.props} onScanResult={this._onScanResult}
+                             onScannerStatsEvent={this._onScannerStats} />;
     }
 }
-const SunmiScanner = requireNativeComponent('SunmiScanner', SunmiScannerView);
+const SunmiScanner = requireNativeComponent('SunmiScanner', SunmiScannerView, {
+    nativeOnly: {onScanResult: true, onScannerStatsEvent: true}
+});